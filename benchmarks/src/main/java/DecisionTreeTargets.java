@@ -0,0 +1,260 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * The decision tree operations measured by benchmarks.DecisionTreeBenchmark.
+ * Like KLPartitionTargets, these are looked up by name from the benchmarks
+ * package because it cannot refer to the default package directly.
+ *
+ * Training data is the Cleveland heart disease table scaled up by drawing
+ * rows at random, with replacement, until it has scale times as many rows.
+ * The data folder is taken from the benchmark.data system property, or
+ * found relative to the working directory.
+ */
+public class DecisionTreeTargets {
+  static final int TARGET_COLUMN = 13;
+
+  // Builds a full ID3 tree from the scaled training data and returns it
+  public static Supplier<Object> buildTree(int scale) {
+    final DataTable<String> data = scaledTable("processed.cleveland.csv", scale, 42);
+    return new Supplier<Object>() {
+      public Object get() {
+        return new TreeNode<String>().buildTree(data);
+      }
+    };
+  }
+
+  // Builds the same tree as buildTree on a pool of the given number of threads
+  public static Supplier<Object> buildTreeParallel(int scale, int parallelism) {
+    final DataTable<String> data = scaledTable("processed.cleveland.csv", scale, 42);
+    final TreeBuilder<String> builder = new TreeBuilder<String>();
+    builder.setParallelism(parallelism);
+    return new PooledTarget(builder) {
+      public Object get() {
+        return builder.build(data);
+      }
+    };
+  }
+
+  // Builds a tree from the scaled training data with numeric columns split at thresholds
+  public static Supplier<Object> buildTreeNumeric(int scale) {
+    final DataTable<String> data = scaledTable("processed.cleveland.csv", scale, 42);
+    final TreeBuilder<String> builder = new TreeBuilder<String>();
+    builder.setNumericSplits(true);
+    return new Supplier<Object>() {
+      public Object get() {
+        return builder.build(data);
+      }
+    };
+  }
+
+  // Builds a tree from the scaled training data with splits found from histograms of the given bins
+  public static Supplier<Object> buildTreeHistogram(int scale, int bins) {
+    final DataTable<String> data = scaledTable("processed.cleveland.csv", scale, 42);
+    final TreeBuilder<String> builder = new TreeBuilder<String>();
+    builder.setHistogramBins(bins);
+    return new Supplier<Object>() {
+      public Object get() {
+        return builder.build(data);
+      }
+    };
+  }
+
+  // Builds a numeric-split tree from the scaled training data, bounded to 6 levels and 64 nodes
+  public static Supplier<Object> buildTreeBounded(int scale) {
+    final DataTable<String> data = scaledTable("processed.cleveland.csv", scale, 42);
+    final TreeBuilder<String> builder = new TreeBuilder<String>();
+    builder.setNumericSplits(true);
+    builder.setMaxDepth(6);
+    builder.setMaxNodes(64);
+    return new Supplier<Object>() {
+      public Object get() {
+        return builder.build(data);
+      }
+    };
+  }
+
+  // Trains a forest of 32 trees from the scaled training data on a pool of the given number of threads
+  public static Supplier<Object> buildForest(int scale, int parallelism) {
+    final DataTable<String> data = scaledTable("processed.cleveland.csv", scale, 42);
+    final ForestBuilder<String> builder = new ForestBuilder<String>();
+    builder.setTreeCount(32);
+    builder.setParallelism(parallelism);
+    return new PooledTarget(builder) {
+      public Object get() {
+        return builder.build(data);
+      }
+    };
+  }
+
+  // Cross-validates trees over 10 folds of the scaled training data on a pool of the given number of threads
+  public static Supplier<Object> crossValidate(int scale, int parallelism) {
+    final DataTable<String> data = scaledTable("processed.cleveland.csv", scale, 42);
+    final CrossValidator<String> validator = new CrossValidator<String>();
+    validator.setParallelism(parallelism);
+    return new PooledTarget(validator) {
+      public Object get() {
+        return validator.validate(data, 10, "'present'");
+      }
+    };
+  }
+
+  // Picks the root split of the scaled training data
+  public static Supplier<Object> maxInfoGainAttribute(int scale) {
+    final DataTable<String> data = scaledTable("processed.cleveland.csv", scale, 42);
+    return new Supplier<Object>() {
+      public Object get() {
+        return data.maxInfoGainAttribute();
+      }
+    };
+  }
+
+  /**
+   * Predicts rowCount rows drawn from the Switzerland table with a tree
+   * trained once on the Cleveland table. Returns the number of rows
+   * predicted 'present' so the work cannot be optimized away.
+   */
+  public static IntSupplier predictAll(int rowCount) {
+    final TreeNode<String> root = new TreeBuilder<String>().build(readTable("processed.cleveland.csv"));
+
+    DataTable<String> test = sampledTable(readTable("processed.switzerland.csv"), rowCount, 7);
+    final List<List<String>> rows = new DecisionTree<String>().asInstanceList(test.getAttributes());
+    return new IntSupplier() {
+      public int getAsInt() {
+        int present = 0;
+        for (List<String> row : rows) {
+          if (root.predict(row).equals("'present'")) {
+            present++;
+          }
+        }
+        return present;
+      }
+    };
+  }
+
+  /**
+   * Predicts the same rows as predictAll with the compiled form of the
+   * tree. Rows are encoded once up front, so only prediction is measured.
+   */
+  public static IntSupplier predictCompiled(int rowCount) {
+    TreeNode<String> root = new TreeBuilder<String>().build(readTable("processed.cleveland.csv"));
+    final CompiledTree<String> tree = CompiledTree.fromTree(root);
+    final int present = tree.getClasses().codeOf("'present'");
+
+    DataTable<String> test = sampledTable(readTable("processed.switzerland.csv"), rowCount, 7);
+    final int[][] rows = new int[rowCount][];
+    int next = 0;
+    for (List<String> row : new DecisionTree<String>().asInstanceList(test.getAttributes())) {
+      rows[next++] = tree.encode(row, new int[tree.columnCount()]);
+    }
+    return new IntSupplier() {
+      public int getAsInt() {
+        int count = 0;
+        for (int[] row : rows) {
+          if (tree.predictCode(row) == present) {
+            count++;
+          }
+        }
+        return count;
+      }
+    };
+  }
+
+  // Scores and evaluates the same rows as predictAll with a BatchPredictor on all cores
+  public static IntSupplier predictBatch(int rowCount) {
+    TreeNode<String> root = new TreeBuilder<String>().build(readTable("processed.cleveland.csv"));
+    final BatchPredictor<String> predictor = new BatchPredictor<String>(CompiledTree.fromTree(root));
+    predictor.setParallelism(Runtime.getRuntime().availableProcessors());
+    final ColumnarTable<String> test =
+        sampledTable(readTable("processed.switzerland.csv"), rowCount, 7).columnar();
+    final int[] predictions = new int[rowCount];
+    return new PooledCounter(predictor) {
+      public int getAsInt() {
+        return predictor.evaluate(test, "'present'", predictions).correct;
+      }
+    };
+  }
+
+  /**
+   * A target that owns a thread pool. The benchmarks close it on teardown,
+   * which shuts the pool down.
+   */
+  abstract static class PooledTarget implements Supplier<Object>, AutoCloseable {
+    final AutoCloseable owner;
+
+    PooledTarget(AutoCloseable owner) {
+      this.owner = owner;
+    }
+
+    public void close() throws Exception {
+      owner.close();
+    }
+  }
+
+  // Like PooledTarget, for targets that return a count
+  abstract static class PooledCounter implements IntSupplier, AutoCloseable {
+    final AutoCloseable owner;
+
+    PooledCounter(AutoCloseable owner) {
+      this.owner = owner;
+    }
+
+    public void close() throws Exception {
+      owner.close();
+    }
+  }
+
+  static DataTable<String> readTable(String fileName) {
+    return new DecisionTree<String>().readCsv(new File(dataDirectory(), fileName).getPath(),
+                                              TARGET_COLUMN);
+  }
+
+  // Resamples the rows of a table so it has scale times as many
+  static DataTable<String> scaledTable(String fileName, int scale, long seed) {
+    DataTable<String> table = readTable(fileName);
+    if (scale == 1) {
+      return table;
+    }
+    return sampledTable(table, scale * table.getTargetAttribute().size(), seed);
+  }
+
+  // returns a table of rowCount rows drawn at random, with replacement, from table
+  static DataTable<String> sampledTable(DataTable<String> table, int rowCount, long seed) {
+    Random random = new Random(seed);
+    int[] rows = new int[rowCount];
+    for (int i = 0; i < rows.length; i++) {
+      rows[i] = random.nextInt(table.getTargetAttribute().size());
+    }
+
+    List<Attribute<String>> attributes = new ArrayList<Attribute<String>>();
+    for (Attribute<String> attribute : table.getAttributes()) {
+      attributes.add(resample(attribute, rows));
+    }
+    return new DataTable<String>(attributes, resample(table.getTargetAttribute(), rows));
+  }
+
+  static Attribute<String> resample(Attribute<String> attribute, int[] rows) {
+    Attribute<String> resampled = new Attribute<String>(attribute.getAttributeName());
+    for (int row : rows) {
+      resampled.add(attribute.get(row));
+    }
+    return resampled;
+  }
+
+  static File dataDirectory() {
+    String property = System.getProperty("benchmark.data");
+    if (property != null) {
+      return new File(property);
+    }
+    for (String candidate : new String[] {"decisionTree/data", "../decisionTree/data"}) {
+      if (new File(candidate).isDirectory()) {
+        return new File(candidate);
+      }
+    }
+    throw new IllegalStateException("Cannot find the heart disease data; set -Dbenchmark.data");
+  }
+}
@@ -0,0 +1,125 @@
+import java.util.Random;
+
+/**
+ * Synthetic graphs for the partitioning benchmarks. Every generator shuffles
+ * vertex ids before building the graph, so the naive first-half starting
+ * split has no head start from the order vertices were created in.
+ */
+public class GraphGenerators {
+
+  // returns the graph made by the named generator: random, planar or powerlaw
+  public static CsrGraph generate(String kind, int size, long seed) {
+    switch (kind) {
+      case "random":
+        return random(size, 8, seed);
+      case "planar":
+        return planar(size, seed);
+      case "powerlaw":
+        return powerLaw(size, 4, seed);
+      default:
+        throw new IllegalArgumentException("Unknown graph kind: " + kind);
+    }
+  }
+
+  // A uniformly random graph with the given average degree and weights from 1 to 5
+  public static CsrGraph random(int size, int averageDegree, long seed) {
+    Random random = new Random(seed);
+    int edgeCount = size * averageDegree / 2;
+    int[] from = new int[edgeCount];
+    int[] to = new int[edgeCount];
+    int[] weight = new int[edgeCount];
+    for (int i = 0; i < edgeCount; i++) {
+      from[i] = random.nextInt(size);
+      to[i] = random.nextInt(size);
+      weight[i] = 1 + random.nextInt(5);
+    }
+    return CsrGraph.fromEdges(size, from, to, weight, edgeCount);
+  }
+
+  /**
+   * A square grid in which each cell also has one of its diagonals, picked
+   * at random, so it is a triangulation with the local structure of a mesh
+   */
+  public static CsrGraph planar(int size, long seed) {
+    Random random = new Random(seed);
+    int side = (int) Math.ceil(Math.sqrt(size));
+    int[] ids = shuffledIds(side * side, random);
+    int[] from = new int[3 * side * side];
+    int[] to = new int[from.length];
+    int[] weight = new int[from.length];
+    int edgeCount = 0;
+
+    for (int row = 0; row < side; row++) {
+      for (int column = 0; column < side; column++) {
+        int u = row * side + column;
+        if (column + 1 < side) {
+          from[edgeCount] = ids[u];
+          to[edgeCount++] = ids[u + 1];
+        }
+        if (row + 1 < side) {
+          from[edgeCount] = ids[u];
+          to[edgeCount++] = ids[u + side];
+        }
+        if (column + 1 < side && row + 1 < side) {
+          if (random.nextBoolean()) {
+            from[edgeCount] = ids[u];
+            to[edgeCount++] = ids[u + side + 1];
+          } else {
+            from[edgeCount] = ids[u + 1];
+            to[edgeCount++] = ids[u + side];
+          }
+        }
+      }
+    }
+    for (int i = 0; i < edgeCount; i++) {
+      weight[i] = 1;
+    }
+    return CsrGraph.fromEdges(side * side, from, to, weight, edgeCount);
+  }
+
+  /**
+   * A Barabasi-Albert preferential attachment graph: each new vertex links to
+   * edgesPerVertex existing vertices chosen in proportion to their degree,
+   * which gives a power-law degree distribution with a few very large hubs
+   */
+  public static CsrGraph powerLaw(int size, int edgesPerVertex, long seed) {
+    Random random = new Random(seed);
+    int[] ids = shuffledIds(size, random);
+    int edgeCount = 0;
+    int[] from = new int[size * edgesPerVertex];
+    int[] to = new int[from.length];
+    int[] weight = new int[from.length];
+
+    // Every edge endpoint goes into endpoints, so picking a random entry
+    // picks a vertex with probability proportional to its degree
+    int[] endpoints = new int[2 * from.length + 1];
+    int endpointCount = 0;
+    endpoints[endpointCount++] = 0;
+
+    for (int u = 1; u < size; u++) {
+      for (int i = 0; i < edgesPerVertex && i < u; i++) {
+        int v = endpoints[random.nextInt(endpointCount)];
+        from[edgeCount] = ids[u];
+        to[edgeCount] = ids[v];
+        weight[edgeCount++] = 1;
+        endpoints[endpointCount++] = u;
+        endpoints[endpointCount++] = v;
+      }
+    }
+    return CsrGraph.fromEdges(size, from, to, weight, edgeCount);
+  }
+
+  private static int[] shuffledIds(int size, Random random) {
+    int[] ids = new int[size];
+    for (int i = 0; i < size; i++) {
+      ids[i] = i;
+    }
+    for (int i = size - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int swap = ids[i];
+      ids[i] = ids[j];
+      ids[j] = swap;
+    }
+    return ids;
+  }
+}
@@ -0,0 +1,65 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * The partitioning operations measured by benchmarks.KLPartitionBenchmark.
+ * JMH benchmarks cannot live in the default package, and a named package
+ * cannot refer to the classes in it, so the benchmarks look these methods
+ * up by name and call the LongSupplier they return. Each supplier runs one
+ * partitioning of a graph generated up front and returns the cut weight.
+ */
+public class KLPartitionTargets {
+
+  public static LongSupplier klPartition(String kind, int size) {
+    final Graph graph = GraphGenerators.generate(kind, size, 42);
+    return new LongSupplier() {
+      public long getAsLong() {
+        KLEngine engine = new KLEngine(graph);
+        engine.partition();
+        return engine.cutWeight();
+      }
+    };
+  }
+
+  public static LongSupplier fmPartition(String kind, int size) {
+    final Graph graph = GraphGenerators.generate(kind, size, 42);
+    return new LongSupplier() {
+      public long getAsLong() {
+        KLEngine engine = new KLEngine(graph);
+        engine.fmPartition();
+        return engine.cutWeight();
+      }
+    };
+  }
+
+  public static LongSupplier multilevel(String kind, int size, final int parts) {
+    final Graph graph = GraphGenerators.generate(kind, size, 42);
+    return new LongSupplier() {
+      public long getAsLong() {
+        int[] partOf = new MultilevelPartitioner().partition(graph, parts);
+        return MultilevelPartitioner.cutWeight(graph, partOf);
+      }
+    };
+  }
+
+  // Runs the original String-labelled KLPartition on a dense copy of the graph
+  public static LongSupplier stringAdapter(String kind, int size) {
+    Graph graph = GraphGenerators.generate(kind, size, 42);
+    final List<String> points = new ArrayList<String>();
+    final Integer[][] matrix = new Integer[graph.size()][graph.size()];
+    for (int u = 0; u < graph.size(); u++) {
+      points.add("v" + u);
+      for (int v = 0; v < graph.size(); v++) {
+        matrix[u][v] = graph.weight(u, v);
+      }
+    }
+    return new LongSupplier() {
+      public long getAsLong() {
+        KLPartition klp = new KLPartition(points, matrix);
+        klp.partition();
+        return klp.cutWeight();
+      }
+    };
+  }
+}
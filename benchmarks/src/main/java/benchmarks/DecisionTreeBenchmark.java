@@ -0,0 +1,144 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ID3 training on the heart disease data, scaled up by resampling rows.
+ * The scale is the multiple of the original row count.
+ *
+ * Each benchmark has its own state, so a trial only builds the target it
+ * measures and its pool, if any, is shut down when the trial ends.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecisionTreeBenchmark {
+  // The scale and target shared by the states below
+  @State(Scope.Benchmark)
+  public abstract static class Target {
+    @Param({"1", "10", "100"})
+    public int scale;
+
+    Supplier<Object> target;
+
+    @TearDown
+    public void tearDown() {
+      Targets.close(target);
+    }
+  }
+
+  public static class BuildTree extends Target {
+    @Setup
+    public void setUp() {
+      target = Targets.create("DecisionTreeTargets", "buildTree", scale);
+    }
+  }
+
+  public static class BuildTreeParallel extends Target {
+    @Setup
+    public void setUp() {
+      target = Targets.create("DecisionTreeTargets", "buildTreeParallel", scale,
+                              Runtime.getRuntime().availableProcessors());
+    }
+  }
+
+  public static class BuildTreeNumeric extends Target {
+    @Setup
+    public void setUp() {
+      target = Targets.create("DecisionTreeTargets", "buildTreeNumeric", scale);
+    }
+  }
+
+  public static class BuildTreeHistogram extends Target {
+    @Setup
+    public void setUp() {
+      target = Targets.create("DecisionTreeTargets", "buildTreeHistogram", scale, 32);
+    }
+  }
+
+  public static class BuildTreeBounded extends Target {
+    @Setup
+    public void setUp() {
+      target = Targets.create("DecisionTreeTargets", "buildTreeBounded", scale);
+    }
+  }
+
+  public static class BuildForest extends Target {
+    @Setup
+    public void setUp() {
+      target = Targets.create("DecisionTreeTargets", "buildForest", scale,
+                              Runtime.getRuntime().availableProcessors());
+    }
+  }
+
+  public static class CrossValidate extends Target {
+    @Setup
+    public void setUp() {
+      target = Targets.create("DecisionTreeTargets", "crossValidate", scale,
+                              Runtime.getRuntime().availableProcessors());
+    }
+  }
+
+  public static class MaxInfoGain extends Target {
+    @Setup
+    public void setUp() {
+      target = Targets.create("DecisionTreeTargets", "maxInfoGainAttribute", scale);
+    }
+  }
+
+  @Benchmark
+  public Object buildTree(BuildTree state) {
+    return state.target.get();
+  }
+
+  @Benchmark
+  public Object buildTreeParallel(BuildTreeParallel state) {
+    return state.target.get();
+  }
+
+  @Benchmark
+  public Object buildTreeNumeric(BuildTreeNumeric state) {
+    return state.target.get();
+  }
+
+  @Benchmark
+  public Object buildTreeHistogram(BuildTreeHistogram state) {
+    return state.target.get();
+  }
+
+  @Benchmark
+  public Object buildTreeBounded(BuildTreeBounded state) {
+    return state.target.get();
+  }
+
+  @Benchmark
+  public Object buildForest(BuildForest state) {
+    return state.target.get();
+  }
+
+  @Benchmark
+  public Object crossValidate(CrossValidate state) {
+    return state.target.get();
+  }
+
+  @Benchmark
+  public Object maxInfoGainAttribute(MaxInfoGain state) {
+    return state.target.get();
+  }
+}
@@ -0,0 +1,54 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Kernighan-Lin pair swapping, as run by KLPartition.partition. Pair
+ * swapping is quadratic per pass, so it is measured on small graphs only,
+ * both through the String-labelled KLPartition and directly on KLEngine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KLPartitionBenchmark {
+  @Param({"random", "planar", "powerlaw"})
+  public String graph;
+
+  @Param({"100", "400", "1600"})
+  public int size;
+
+  LongSupplier engine;
+  LongSupplier adapter;
+
+  @Setup
+  public void setUp() {
+    engine = Targets.create("KLPartitionTargets", "klPartition", graph, size);
+    adapter = Targets.create("KLPartitionTargets", "stringAdapter", graph, size);
+  }
+
+  @Benchmark
+  public long engine() {
+    return engine.getAsLong();
+  }
+
+  @Benchmark
+  public long klPartition() {
+    return adapter.getAsLong();
+  }
+}
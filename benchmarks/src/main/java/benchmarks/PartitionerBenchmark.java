@@ -0,0 +1,53 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Fiduccia-Mattheyses bisection and 8-way multilevel partitioning, which
+ * scale to much larger graphs than pair swapping.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PartitionerBenchmark {
+  @Param({"random", "planar", "powerlaw"})
+  public String graph;
+
+  @Param({"10000", "100000"})
+  public int size;
+
+  LongSupplier fm;
+  LongSupplier multilevel;
+
+  @Setup
+  public void setUp() {
+    fm = Targets.create("KLPartitionTargets", "fmPartition", graph, size);
+    multilevel = Targets.create("KLPartitionTargets", "multilevel", graph, size, 8);
+  }
+
+  @Benchmark
+  public long fmPartition() {
+    return fm.getAsLong();
+  }
+
+  @Benchmark
+  public long multilevel() {
+    return multilevel.getAsLong();
+  }
+}
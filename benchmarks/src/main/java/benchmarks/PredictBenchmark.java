@@ -0,0 +1,67 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ID3 prediction with a tree trained once on the Cleveland table, walking
+ * the TreeNode objects, walking the compiled form of the tree and scoring
+ * the whole table with a BatchPredictor. Each call predicts ROWS rows drawn
+ * from the Switzerland table, and results are reported per row.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PredictBenchmark {
+  static final int ROWS = 1000;
+
+  IntSupplier predictAll;
+  IntSupplier predictCompiled;
+  IntSupplier predictBatch;
+
+  @Setup
+  public void setUp() {
+    predictAll = Targets.create("DecisionTreeTargets", "predictAll", ROWS);
+    predictCompiled = Targets.create("DecisionTreeTargets", "predictCompiled", ROWS);
+    predictBatch = Targets.create("DecisionTreeTargets", "predictBatch", ROWS);
+  }
+
+  @TearDown
+  public void tearDown() {
+    Targets.close(predictBatch);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public int predict() {
+    return predictAll.getAsInt();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public int predictCompiled() {
+    return predictCompiled.getAsInt();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public int predictBatch() {
+    return predictBatch.getAsInt();
+  }
+}
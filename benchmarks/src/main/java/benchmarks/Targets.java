@@ -0,0 +1,43 @@
+package benchmarks;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Looks up the static factory methods of the target classes. The code under
+ * test is in the default package, which JMH will not generate benchmarks
+ * for and which named packages cannot import, so the benchmarks reach it by
+ * reflection once during setup and then only call the returned functions.
+ */
+final class Targets {
+  private Targets() {
+  }
+
+  @SuppressWarnings("unchecked")
+  static <T> T create(String className, String methodName, Object... args) {
+    try {
+      Class<?> targets = Class.forName(className);
+      for (Method method : targets.getMethods()) {
+        if (method.getName().equals(methodName) && method.getParameterCount() == args.length) {
+          return (T) method.invoke(null, args);
+        }
+      }
+      throw new IllegalArgumentException("No method " + methodName + " in " + className);
+    } catch (ClassNotFoundException | IllegalAccessException e) {
+      throw new IllegalStateException("Cannot load benchmark target " + className, e);
+    } catch (InvocationTargetException e) {
+      throw new IllegalStateException("Benchmark setup failed", e.getCause());
+    }
+  }
+
+  // Closes a target made by create if it holds resources, such as a thread pool
+  static void close(Object target) {
+    if (target instanceof AutoCloseable) {
+      try {
+        ((AutoCloseable) target).close();
+      } catch (Exception e) {
+        throw new IllegalStateException("Benchmark teardown failed", e);
+      }
+    }
+  }
+}
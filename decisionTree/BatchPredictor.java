@@ -0,0 +1,194 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Scores whole tables with a CompiledTree. The test table's own dictionary
+ * codes are translated to the tree's codes once per column, so each row is
+ * predicted without looking up any values, and predictions are written to
+ * an int[] of the tree's class codes (see CompiledTree.getClasses).
+ *
+ * When given a ForkJoinPool (see setParallelism), rows are scored in chunks
+ * across the pool. Each chunk keeps its own confusion counts, which are
+ * added together at the end, so evaluating a table takes the same single
+ * pass as predicting it.
+ *
+ * The columns of a scored table must be in the same order as the columns
+ * of the table the tree was trained on.
+ */
+public class BatchPredictor<T> implements AutoCloseable {
+  // Below this many rows a chunk is scored without splitting it further
+  static final int CHUNK_ROWS = 1 << 12;
+
+  CompiledTree<T> tree;
+
+  // Pool for scoring chunks in parallel, or null to score sequentially
+  ForkJoinPool pool;
+  // Whether pool was made by setParallelism rather than given to setPool
+  boolean ownsPool;
+
+  public BatchPredictor(CompiledTree<T> tree) {
+    this.tree = tree;
+  }
+
+  // returns the class code the tree predicts for each row of the table
+  public int[] predict(DataTable<T> table) {
+    ColumnarTable<T> columnar = table.columnar();
+    int[] predictions = new int[columnar.rowCount()];
+    predict(columnar, predictions);
+    return predictions;
+  }
+
+  // Writes the class code the tree predicts for each row of the table into predictions
+  public void predict(ColumnarTable<T> table, int[] predictions) {
+    score(table, predictions, null);
+  }
+
+  public Evaluation evaluate(DataTable<T> table, String positiveClass, int[] predictions) {
+    return evaluate(table.columnar(), positiveClass, predictions);
+  }
+
+  /**
+   * Predicts every row of the table into predictions and compares the
+   * predictions with the table's target column in the same pass
+   */
+  public Evaluation evaluate(ColumnarTable<T> table, String positiveClass, int[] predictions) {
+    // Labels are the tree's classes, in the same order, then any new target values
+    ValueDictionary<String> labels = new ValueDictionary<String>();
+    for (int code = 0; code < tree.getClasses().size(); code++) {
+      labels.encode(tree.getClasses().valueOf(code));
+    }
+    int[] actualOf = new int[table.getTargetDictionary().size()];
+    for (int code = 0; code < actualOf.length; code++) {
+      actualOf[code] = labels.encode(table.getTargetDictionary().valueOf(code).toString());
+    }
+
+    int[] counts = score(table, predictions, new Labels(actualOf, labels.size()));
+    int[][] confusion = new int[labels.size()][labels.size()];
+    for (int actual = 0; actual < labels.size(); actual++) {
+      for (int predicted = 0; predicted < labels.size(); predicted++) {
+        confusion[actual][predicted] = counts[actual * labels.size() + predicted];
+      }
+    }
+    return new Evaluation(labels.values, confusion, positiveClass);
+  }
+
+  // The label of each target code of the table being evaluated
+  static class Labels {
+    int[] actualOf;
+    int labelCount;
+
+    Labels(int[] actualOf, int labelCount) {
+      this.actualOf = actualOf;
+      this.labelCount = labelCount;
+    }
+  }
+
+  // Scores all rows, returning confusion counts if labels is not null
+  int[] score(ColumnarTable<T> table, int[] predictions, Labels labels) {
+    int[][] codeMaps = codeMaps(table);
+    ScoreTask task = new ScoreTask(table, codeMaps, predictions, labels, 0, table.rowCount());
+    return (pool != null) ? pool.invoke(task) : task.compute();
+  }
+
+  /**
+   * returns, for each column the tree splits on, the tree's code for each
+   * of the table's codes, or -1 where the tree has no such value
+   */
+  int[][] codeMaps(ColumnarTable<T> table) {
+    if (table.columnCount() < tree.columnCount()) {
+      throw new IllegalArgumentException("Table has " + table.columnCount() +
+                                         " columns but the tree uses " + tree.columnCount());
+    }
+    int[][] codeMaps = new int[tree.columnCount()][];
+    for (int column = 0; column < codeMaps.length; column++) {
+      ValueDictionary<T> dictionary = table.getDictionary(column);
+      codeMaps[column] = new int[dictionary.size()];
+      for (int code = 0; code < codeMaps[column].length; code++) {
+        codeMaps[column][code] = tree.codeOf(column, dictionary.valueOf(code));
+      }
+    }
+    return codeMaps;
+  }
+
+  // Scores the rows from fromRow to toRow, splitting large ranges across the pool
+  @SuppressWarnings("serial")
+  class ScoreTask extends RecursiveTask<int[]> {
+    ColumnarTable<T> table;
+    int[][] codeMaps;
+    int[] predictions;
+    Labels labels;
+    int fromRow, toRow;
+
+    ScoreTask(ColumnarTable<T> table, int[][] codeMaps, int[] predictions, Labels labels,
+              int fromRow, int toRow) {
+      this.table = table;
+      this.codeMaps = codeMaps;
+      this.predictions = predictions;
+      this.labels = labels;
+      this.fromRow = fromRow;
+      this.toRow = toRow;
+    }
+
+    protected int[] compute() {
+      if (pool == null || toRow - fromRow <= CHUNK_ROWS) {
+        return scoreRows();
+      }
+      int middle = (fromRow + toRow) >>> 1;
+      ScoreTask left = new ScoreTask(table, codeMaps, predictions, labels, fromRow, middle);
+      left.fork();
+      int[] counts = new ScoreTask(table, codeMaps, predictions, labels, middle, toRow).compute();
+      int[] leftCounts = left.join();
+      if (counts != null) {
+        for (int i = 0; i < counts.length; i++) {
+          counts[i] += leftCounts[i];
+        }
+      }
+      return counts;
+    }
+
+    int[] scoreRows() {
+      int[] codes = new int[codeMaps.length];
+      int[] counts = (labels == null) ? null : new int[labels.labelCount * labels.labelCount];
+      for (int row = fromRow; row < toRow; row++) {
+        for (int column = 0; column < codes.length; column++) {
+          codes[column] = codeMaps[column][table.getCode(row, column)];
+        }
+        int prediction = tree.predictCode(codes);
+        predictions[row] = prediction;
+        if (counts != null) {
+          counts[labels.actualOf[table.getTargetCode(row)] * labels.labelCount + prediction]++;
+        }
+      }
+      return counts;
+    }
+  }
+
+  /**
+   * Sets the number of threads used to score tables. A parallelism of 1
+   * scores on the calling thread.
+   */
+  public void setParallelism(int parallelism) {
+    close();
+    pool = (parallelism > 1) ? new ForkJoinPool(parallelism) : null;
+    ownsPool = (pool != null);
+  }
+
+  // Scores tables on a shared pool, or sequentially if pool is null
+  public void setPool(ForkJoinPool pool) {
+    close();
+    this.pool = pool;
+  }
+
+  /**
+   * Shuts down the pool made by setParallelism, if any, and goes back to
+   * running sequentially. A pool given to setPool is left running.
+   */
+  @Override
+  public void close() {
+    if (ownsPool) {
+      pool.shutdown();
+      pool = null;
+      ownsPool = false;
+    }
+  }
+}
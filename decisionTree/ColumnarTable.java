@@ -0,0 +1,833 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A DataTable in columnar form for training. Each column is stored as an
+ * int[] of dictionary codes, with one ValueDictionary per column, so value
+ * comparisons are int comparisons and value counts are kept in int[] arrays
+ * indexed by code instead of HashMaps of boxed Integers.
+ *
+ * A ColumnarTable is a view: the columns are shared by every table split
+ * from the same base table, and each view selects its rows as a range of a
+ * shared array of row indices and its columns with a mask of column
+ * indices. Splitting a view groups the row indices in its own range in
+ * place, so building a tree copies no column data and the views of
+ * different branches never touch the same part of the index array.
+ *
+ * Columns whose values are all numbers can instead be split at a threshold
+ * (see presortNumericColumns). Each such column gets a second array of row
+ * indices, sorted once by value, and splitting keeps every view's range of
+ * it sorted, so the best threshold of a column is found in one sweep of the
+ * view's rows without sorting them again.
+ *
+ * For very large tables, columns can be binned instead (see binColumns).
+ * Numeric columns are cut into a bounded number of bins of about equal row
+ * counts, and each view keeps a histogram of target counts per bin of each
+ * column. Splits are then scored from the histograms, in time depending
+ * on the number of bins rather than rows, and thresholds fall on bin
+ * boundaries. On a split, only the smaller children count their rows; the
+ * largest child's histograms are the parent's minus theirs.
+ */
+public class ColumnarTable<T> {
+  String[] names;
+  ValueDictionary<T>[] dictionaries;
+  int[][] columns;
+  String targetName;
+  ValueDictionary<T> targetDictionary;
+  int[] target;
+
+  int[] rows;
+  int[] scratch;
+  int start;
+  int end;
+  int[] activeColumns;
+  double targetEntropy;
+
+  // For each base column split at thresholds, the rank of each code's value, else null
+  int[][] ranks;
+  // For each base column split at thresholds, a code with each rank
+  int[][] rankCodes;
+  // For each base column split at thresholds, the row indices in the order of their values
+  int[][] sorted;
+  // For each binned base column, the bin of each code, else null
+  int[][] bins;
+  // For each binned numeric base column, the code of the largest value in each bin
+  int[][] binCodes;
+  // For each binned base column, this view's number of rows with each bin and target code
+  int[][] histogram;
+
+  public ColumnarTable(String[] names, ValueDictionary<T>[] dictionaries, int[][] columns,
+                       ValueDictionary<T> targetDictionary, int[] target) {
+    this.names = names;
+    this.dictionaries = dictionaries;
+    this.columns = columns;
+    this.targetDictionary = targetDictionary;
+    this.target = target;
+    this.rows = new int[target.length];
+    for (int row = 0; row < rows.length; row++) {
+      rows[row] = row;
+    }
+    this.scratch = new int[target.length];
+    this.start = 0;
+    this.end = target.length;
+    this.activeColumns = new int[columns.length];
+    for (int column = 0; column < columns.length; column++) {
+      activeColumns[column] = column;
+    }
+    this.targetEntropy = Double.NaN;
+  }
+
+  // Creates a view of the rows from start to end of the parent's row indices
+  ColumnarTable(ColumnarTable<T> parent, int start, int end, int[] activeColumns) {
+    this.names = parent.names;
+    this.targetName = parent.targetName;
+    this.dictionaries = parent.dictionaries;
+    this.columns = parent.columns;
+    this.targetDictionary = parent.targetDictionary;
+    this.target = parent.target;
+    this.rows = parent.rows;
+    this.scratch = parent.scratch;
+    this.start = start;
+    this.end = end;
+    this.activeColumns = activeColumns;
+    this.targetEntropy = Double.NaN;
+    this.ranks = parent.ranks;
+    this.rankCodes = parent.rankCodes;
+    this.sorted = parent.sorted;
+    this.bins = parent.bins;
+    this.binCodes = parent.binCodes;
+  }
+
+  /**
+   * returns a new view of every row and column of the base table, with its
+   * own row indices, so it can be split without affecting this view
+   */
+  public ColumnarTable<T> baseView() {
+    ColumnarTable<T> view = new ColumnarTable<T>(names, dictionaries, columns, targetDictionary, target);
+    view.targetName = targetName;
+    return view;
+  }
+
+  /**
+   * returns a view of the given rows, as indices into the base table, and
+   * the given base columns. Rows may repeat, as in a bootstrap sample. The
+   * view has its own row indices, so it can be split without affecting
+   * this one, and shares everything else with the base table.
+   */
+  public ColumnarTable<T> sample(int[] sampleRows, int[] sampleColumns) {
+    ColumnarTable<T> view = new ColumnarTable<T>(this, 0, sampleRows.length, sampleColumns);
+    view.rows = sampleRows;
+    view.scratch = new int[sampleRows.length];
+    // Presorting and binning depend on the rows, so the sample starts without them
+    view.ranks = null;
+    view.rankCodes = null;
+    view.sorted = null;
+    view.bins = null;
+    view.binCodes = null;
+    return view;
+  }
+
+  // returns the index in the base table of each row of this view
+  public int[] baseRows() {
+    return Arrays.copyOfRange(rows, start, end);
+  }
+
+  // Encodes every column of the table, including the target column
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public static <T> ColumnarTable<T> fromDataTable(DataTable<T> table) {
+    List<Attribute<T>> attributes = table.getAttributes();
+    String[] names = new String[attributes.size()];
+    ValueDictionary<T>[] dictionaries = new ValueDictionary[attributes.size()];
+    int[][] columns = new int[attributes.size()][];
+    for (int i = 0; i < attributes.size(); i++) {
+      names[i] = attributes.get(i).getAttributeName();
+      dictionaries[i] = new ValueDictionary<T>();
+      columns[i] = encode(attributes.get(i), dictionaries[i]);
+    }
+    ValueDictionary<T> targetDictionary = new ValueDictionary<T>();
+    int[] target = encode(table.getTargetAttribute(), targetDictionary);
+    ColumnarTable<T> columnar = new ColumnarTable<T>(names, dictionaries, columns, targetDictionary, target);
+    columnar.targetName = table.getTargetAttribute().getAttributeName();
+    return columnar;
+  }
+
+  static <T> int[] encode(Attribute<T> attribute, ValueDictionary<T> dictionary) {
+    int[] codes = new int[attribute.size()];
+    for (int row = 0; row < codes.length; row++) {
+      codes[row] = dictionary.encode(attribute.get(row));
+    }
+    return codes;
+  }
+
+  /**
+   * Marks every active column whose values are all numbers, apart from
+   * missing values, to be split at thresholds instead of by value, and
+   * sorts this view's rows by each of them. Views split from this one keep
+   * their rows sorted. Does nothing if this view is already presorted or
+   * binned.
+   */
+  public void presortNumericColumns() {
+    if (ranks != null) {
+      return;
+    }
+    ranks = new int[columns.length][];
+    rankCodes = new int[columns.length][];
+    sorted = new int[columns.length][];
+    for (int column : activeColumns) {
+      rankValues(column);
+      if (ranks[column] == null) {
+        continue;
+      }
+
+      // Counting sort of the rows by rank, which keeps rows of equal value in order
+      int[] x = columns[column];
+      int[] rank = ranks[column];
+      int[] next = new int[rankCodes[column].length + 1];
+      for (int i = start; i < end; i++) {
+        next[rank[x[rows[i]]] + 1]++;
+      }
+      next[0] = start;
+      for (int r = 0; r + 1 < next.length; r++) {
+        next[r + 1] += next[r];
+      }
+      sorted[column] = new int[rows.length];
+      for (int i = start; i < end; i++) {
+        sorted[column][next[rank[x[rows[i]]]]++] = rows[i];
+      }
+    }
+  }
+
+  /**
+   * Bins every active column for histogram split finding. Each column whose
+   * values are all numbers, apart from missing values, is split at
+   * thresholds, and its values are cut into at most maxBins bins of about
+   * equal numbers of this view's rows, never splitting a value between two
+   * bins. Other columns with at most maxBins values use their codes as bins
+   * and are split by value as usual, and the rest are scored from their
+   * rows. Does nothing if this view is already presorted or binned.
+   */
+  public void binColumns(int maxBins) {
+    if (ranks != null) {
+      return;
+    }
+    ranks = new int[columns.length][];
+    rankCodes = new int[columns.length][];
+    bins = new int[columns.length][];
+    binCodes = new int[columns.length][];
+    for (int column : activeColumns) {
+      rankValues(column);
+      if (ranks[column] != null) {
+        binValues(column, maxBins);
+      } else if (dictionaries[column].size() <= maxBins) {
+        bins[column] = new int[dictionaries[column].size()];
+        for (int code = 0; code < bins[column].length; code++) {
+          bins[column][code] = code;
+        }
+      }
+    }
+    histogram = countBins();
+  }
+
+  // Cuts the ranks of a numeric base column into at most maxBins bins of about equal row counts
+  void binValues(int column, int maxBins) {
+    int[] rank = ranks[column];
+    int[] x = columns[column];
+    int rankCount = rankCodes[column].length;
+    int[] rowsWithRank = new int[rankCount];
+    for (int i = start; i < end; i++) {
+      rowsWithRank[rank[x[rows[i]]]]++;
+    }
+
+    // Give each value its own bin if there are few enough of them, or else
+    // close a bin once the rows so far reach its share of the total
+    int[] binOfRank = new int[rankCount];
+    int[] lastRank = new int[Math.min(maxBins, rankCount)];
+    int bin = 0;
+    long rowsSoFar = 0;
+    for (int r = 0; r < rankCount; r++) {
+      binOfRank[r] = bin;
+      lastRank[bin] = r;
+      rowsSoFar += rowsWithRank[r];
+      if (bin + 1 < lastRank.length &&
+          (rankCount <= maxBins || rowsSoFar * maxBins >= (long) (bin + 1) * rowCount())) {
+        bin++;
+      }
+    }
+
+    bins[column] = new int[rank.length];
+    for (int code = 0; code < rank.length; code++) {
+      bins[column][code] = binOfRank[rank[code]];
+    }
+    binCodes[column] = new int[bin + 1];
+    for (int b = 0; b <= bin; b++) {
+      binCodes[column][b] = rankCodes[column][lastRank[b]];
+    }
+  }
+
+  // returns the number of bins of a binned base column
+  int binCount(int column) {
+    return (binCodes[column] != null) ? binCodes[column].length : bins[column].length;
+  }
+
+  /**
+   * returns, for each binned active column, the number of rows of this
+   * view with each bin and target code, at bin * |Y| + y
+   */
+  int[][] countBins() {
+    int ySize = targetDictionary.size();
+    int[][] counts = new int[columns.length][];
+    for (int column : activeColumns) {
+      if (bins[column] == null) {
+        continue;
+      }
+      int[] bin = bins[column];
+      int[] x = columns[column];
+      int[] count = new int[binCount(column) * ySize];
+      for (int i = start; i < end; i++) {
+        count[bin[x[rows[i]]] * ySize + target[rows[i]]]++;
+      }
+      counts[column] = count;
+    }
+    return counts;
+  }
+
+  // Ranks the values of a base column by number, leaving its ranks null if it is not numeric
+  void rankValues(int column) {
+    ranks[column] = rankValues(dictionaries[column]);
+    if (ranks[column] != null) {
+      rankCodes[column] = codesByRank(ranks[column]);
+    }
+  }
+
+  /**
+   * returns the rank of each code's value by number, with equal numbers
+   * sharing a rank, or null if some value is not a number or every value
+   * is missing
+   */
+  static <T> int[] rankValues(ValueDictionary<T> dictionary) {
+    final double[] values = new double[dictionary.size()];
+    Integer[] order = new Integer[values.length];
+    boolean anyNumber = false;
+    for (int code = 0; code < values.length; code++) {
+      values[code] = numericValue(dictionary.valueOf(code));
+      if (Double.isNaN(values[code])) {
+        return null;
+      }
+      anyNumber |= values[code] != Double.NEGATIVE_INFINITY;
+      order[code] = code;
+    }
+    if (!anyNumber) {
+      return null;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      public int compare(Integer a, Integer b) {
+        return Double.compare(values[a], values[b]);
+      }
+    });
+
+    int[] rank = new int[values.length];
+    int rankCount = 0;
+    for (int i = 0; i < order.length; i++) {
+      if (i == 0 || values[order[i]] != values[order[i - 1]]) {
+        rankCount++;
+      }
+      rank[order[i]] = rankCount - 1;
+    }
+    return rank;
+  }
+
+  // returns the first code with each rank
+  static int[] codesByRank(int[] rank) {
+    int rankCount = 0;
+    for (int r : rank) {
+      rankCount = Math.max(rankCount, r + 1);
+    }
+    int[] codes = new int[rankCount];
+    Arrays.fill(codes, -1);
+    for (int code = 0; code < rank.length; code++) {
+      if (codes[rank[code]] == -1) {
+        codes[rank[code]] = code;
+      }
+    }
+    return codes;
+  }
+
+  /**
+   * returns the number a value stands for: the value itself if it is a
+   * Number, negative infinity if it is missing (null or blank), the number
+   * its text spells otherwise, or NaN if its text is not a number. Missing
+   * values therefore sort before every number.
+   */
+  public static double numericValue(Object value) {
+    if (value instanceof Number) {
+      return ((Number) value).doubleValue() + 0.0;
+    }
+    if (value == null || value.toString().trim().isEmpty()) {
+      return Double.NEGATIVE_INFINITY;
+    }
+    try {
+      // Adding 0.0 turns -0.0 into 0.0, so the two compare as the same number
+      return Double.parseDouble(value.toString().trim()) + 0.0;
+    } catch (NumberFormatException e) {
+      return Double.NaN;
+    }
+  }
+
+  // returns true if the column is split at thresholds rather than by value
+  public boolean isNumeric(int column) {
+    return ranks != null && ranks[activeColumns[column]] != null;
+  }
+
+  // returns true if the column is scored from this view's histograms
+  boolean isBinned(int column) {
+    return histogram != null && histogram[activeColumns[column]] != null;
+  }
+
+  /**
+   * returns the column x which maximizes information gain of the target
+   * given x, or -1 if no column can split the rows. Each column is scored
+   * from its contingency counts, built in a single scan of the rows into
+   * one buffer reused for every column.
+   */
+  public int maxInfoGainColumn() {
+    int[] contingency = new int[Math.max(maxDictionarySize(), 2) * targetDictionary.size()];
+    int maxInfoGainColumn = -1;
+    double maxInfoGain = Double.NEGATIVE_INFINITY;
+
+    for (int column = 0; column < activeColumns.length; column++) {
+      double currentInfoGain = informationGain(column, contingency);
+      if (currentInfoGain > maxInfoGain) {
+        maxInfoGainColumn = column;
+        maxInfoGain = currentInfoGain;
+      }
+    }
+    return maxInfoGainColumn;
+  }
+
+  /**
+   * IG(Y|X) = H(Y) - H(Y|X), where Y is the target and X is the given
+   * column, or the gain of its best threshold if it is split at thresholds
+   */
+  public double informationGain(int column) {
+    int size = isNumeric(column) ? 2 : dictionaries[activeColumns[column]].size();
+    return informationGain(column, new int[size * targetDictionary.size()]);
+  }
+
+  /**
+   * The information gain of the column, using buffer for counts. buffer
+   * must hold at least max(|X|, 2) * |Y| ints.
+   */
+  double informationGain(int column, int[] buffer) {
+    if (isBinned(column)) {
+      if (isNumeric(column)) {
+        return binThresholdGain(column, buffer, null);
+      }
+      return targetEntropy() - conditionalEntropyOf(histogram[activeColumns[column]],
+                                                    dictionaries[activeColumns[column]].size(),
+                                                    targetDictionary.size(), rowCount());
+    }
+    if (isNumeric(column)) {
+      return thresholdGain(column, buffer, null);
+    }
+    return targetEntropy() - conditionalEntropyOf(column, buffer);
+  }
+
+  /**
+   * returns the best threshold of a column split at thresholds: a rank if
+   * the table is presorted, or a bin if it is binned
+   */
+  public int bestThreshold(int column) {
+    int[] threshold = new int[1];
+    if (isBinned(column)) {
+      binThresholdGain(column, new int[2 * targetDictionary.size()], threshold);
+    } else {
+      thresholdGain(column, new int[2 * targetDictionary.size()], threshold);
+    }
+    return threshold[0];
+  }
+
+  /**
+   * The information gain of the best binary split of a numeric column,
+   * rows with a value of at most some rank against the rest, or negative
+   * infinity if the rows all have the same value. The rows are swept in
+   * value order, moving each row's target from the right counts to the left
+   * counts, and each boundary between two values is scored. counts must
+   * hold at least 2 * |Y| ints. The rank of the first best threshold is
+   * stored in threshold[0] if threshold is not null.
+   */
+  double thresholdGain(int column, int[] counts, int[] threshold) {
+    int[] order = sorted[activeColumns[column]];
+    int[] x = columns[activeColumns[column]];
+    int[] rank = ranks[activeColumns[column]];
+    int ySize = targetDictionary.size();
+    int total = rowCount();
+    Arrays.fill(counts, 0, 2 * ySize, 0);
+    for (int i = start; i < end; i++) {
+      counts[ySize + target[order[i]]]++;
+    }
+
+    double maxGain = Double.NEGATIVE_INFINITY;
+    for (int i = start; i + 1 < end; i++) {
+      int y = target[order[i]];
+      counts[y]++;
+      counts[ySize + y]--;
+      int r = rank[x[order[i]]];
+      if (r != rank[x[order[i + 1]]]) {
+        int left = i + 1 - start;
+        double entropy = (double) left / total * entropyOf(counts, 0, ySize, left) +
+                         (double) (total - left) / total * entropyOf(counts, ySize, 2 * ySize, total - left);
+        double gain = targetEntropy() - entropy;
+        if (gain > maxGain) {
+          maxGain = gain;
+          if (threshold != null) {
+            threshold[0] = r;
+          }
+        }
+      }
+    }
+    return maxGain;
+  }
+
+  /**
+   * As thresholdGain, from the column's histogram: bins are swept in order
+   * and each boundary after a bin with rows is scored. The best bin is
+   * stored in threshold[0] if threshold is not null.
+   */
+  double binThresholdGain(int column, int[] counts, int[] threshold) {
+    int[] count = histogram[activeColumns[column]];
+    int ySize = targetDictionary.size();
+    int binCount = count.length / ySize;
+    int total = rowCount();
+    Arrays.fill(counts, 0, 2 * ySize, 0);
+    for (int bin = 0; bin < binCount; bin++) {
+      for (int y = 0; y < ySize; y++) {
+        counts[ySize + y] += count[bin * ySize + y];
+      }
+    }
+
+    double maxGain = Double.NEGATIVE_INFINITY;
+    int left = 0;
+    for (int bin = 0; bin < binCount; bin++) {
+      int binRows = 0;
+      for (int y = 0; y < ySize; y++) {
+        counts[y] += count[bin * ySize + y];
+        counts[ySize + y] -= count[bin * ySize + y];
+        binRows += count[bin * ySize + y];
+      }
+      left += binRows;
+      if (left == total) {
+        break;
+      }
+      if (binRows > 0) {
+        double entropy = (double) left / total * entropyOf(counts, 0, ySize, left) +
+                         (double) (total - left) / total * entropyOf(counts, ySize, 2 * ySize, total - left);
+        double gain = targetEntropy() - entropy;
+        if (gain > maxGain) {
+          maxGain = gain;
+          if (threshold != null) {
+            threshold[0] = bin;
+          }
+        }
+      }
+    }
+    return maxGain;
+  }
+
+  // returns the largest value at or below a threshold from bestThreshold
+  public T thresholdValue(int column, int threshold) {
+    int base = activeColumns[column];
+    int[] codes = (bins != null && binCodes[base] != null) ? binCodes[base] : rankCodes[base];
+    return dictionaries[base].valueOf(codes[threshold]);
+  }
+
+  // returns the entropy of the target, which is computed once per view
+  public double targetEntropy() {
+    if (Double.isNaN(targetEntropy)) {
+      int[] counts = countValues(target, targetDictionary.size());
+      targetEntropy = entropyOf(counts, 0, counts.length, rowCount());
+    }
+    return targetEntropy;
+  }
+
+  public double conditionalEntropyOf(int column) {
+    int[] contingency = new int[dictionaries[activeColumns[column]].size() * targetDictionary.size()];
+    return conditionalEntropyOf(column, contingency);
+  }
+
+  /**
+   * The conditional entropy of the target Y given column X,
+   * H(Y|X) = sum(P(Xi) H(Y|X = Xi)),
+   * from the counts of each pair of X and Y values, which are found in one
+   * scan of the rows. contingency must hold at least |X| * |Y| ints.
+   */
+  double conditionalEntropyOf(int column, int[] contingency) {
+    int[] x = columns[activeColumns[column]];
+    int xSize = dictionaries[activeColumns[column]].size();
+    int ySize = targetDictionary.size();
+    Arrays.fill(contingency, 0, xSize * ySize, 0);
+    for (int i = start; i < end; i++) {
+      contingency[x[rows[i]] * ySize + target[rows[i]]]++;
+    }
+    return conditionalEntropyOf(contingency, xSize, ySize, rowCount());
+  }
+
+  /**
+   * The conditional entropy of Y given X from contingency counts, where
+   * contingency[x * ySize + y] is the number of rows with X = x and Y = y
+   */
+  public static double conditionalEntropyOf(int[] contingency, int xSize, int ySize, int total) {
+    double sum = 0.0;
+    for (int x = 0; x < xSize; x++) {
+      int xCount = 0;
+      for (int y = x * ySize; y < (x + 1) * ySize; y++) {
+        xCount += contingency[y];
+      }
+      if (xCount > 0) {
+        sum += (double) xCount / total * entropyOf(contingency, x * ySize, (x + 1) * ySize, xCount);
+      }
+    }
+    return sum;
+  }
+
+  /**
+   * The entropy of a distribution given by the value counts from counts[from]
+   * up to counts[to],
+   * H(X) = -1 * sum( P(Xi) log_2 P(Xi) )
+   */
+  public static double entropyOf(int[] counts, int from, int to, int total) {
+    double sum = 0.0;
+    for (int i = from; i < to; i++) {
+      if (counts[i] > 0) {
+        double probability = (double) counts[i] / total;
+        sum -= probability * (Math.log(probability) / Math.log(2));
+      }
+    }
+    return sum;
+  }
+
+  int maxDictionarySize() {
+    int max = 0;
+    for (int column : activeColumns) {
+      max = Math.max(max, dictionaries[column].size());
+    }
+    return max;
+  }
+
+  // returns the number of times each code appears in the rows of this view
+  int[] countValues(int[] codes, int dictionarySize) {
+    int[] counts = new int[dictionarySize];
+    for (int i = start; i < end; i++) {
+      counts[codes[rows[i]]]++;
+    }
+    return counts;
+  }
+
+  /**
+   * returns the code of the most common target value, choosing the value
+   * that appears first in the table on a tie, or -1 if the table has no rows
+   */
+  public int targetMajority() {
+    int[] counts = countValues(target, targetDictionary.size());
+    int maxCount = 0;
+    for (int count : counts) {
+      maxCount = Math.max(maxCount, count);
+    }
+    for (int i = start; i < end; i++) {
+      if (counts[target[rows[i]]] == maxCount) {
+        return target[rows[i]];
+      }
+    }
+    return -1;
+  }
+
+  public boolean allTargetsSame() {
+    for (int i = start + 1; i < end; i++) {
+      if (target[rows[i]] != target[rows[start]]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // returns the codes appearing in the column, in the order they first appear
+  public int[] distinctCodes(int column) {
+    int[] x = columns[activeColumns[column]];
+    boolean[] seen = new boolean[dictionaries[activeColumns[column]].size()];
+    int[] distinct = new int[seen.length];
+    int count = 0;
+    for (int i = start; i < end; i++) {
+      int code = x[rows[i]];
+      if (!seen[code]) {
+        seen[code] = true;
+        distinct[count++] = code;
+      }
+    }
+    return Arrays.copyOf(distinct, count);
+  }
+
+  /**
+   * Splits this table on a column, returning one view for each of the
+   * given codes, in the same order, holding the rows with that code and
+   * every column but the split one, like DataTable.filterAttributes.
+   *
+   * The row indices of this view are grouped by code in place, keeping
+   * their order within each group, so this view should not be used after
+   * it has been split. Codes should be those from distinctCodes.
+   */
+  public ColumnarTable<T>[] split(int column, int[] codes) {
+    int[] groupOf = new int[dictionaries[activeColumns[column]].size()];
+    Arrays.fill(groupOf, -1);
+    for (int group = 0; group < codes.length; group++) {
+      groupOf[codes[group]] = group;
+    }
+    int[] childColumns = new int[activeColumns.length - 1];
+    for (int i = 0, j = 0; i < activeColumns.length; i++) {
+      if (i != column) {
+        childColumns[j++] = activeColumns[i];
+      }
+    }
+    return partition(column, groupOf, codes.length, childColumns);
+  }
+
+  /**
+   * Splits this table on a column split at thresholds into a view of the
+   * rows at or below the given threshold from bestThreshold and a view of
+   * the rest. Both keep every column, so the column can be split again
+   * further down. As with split, this view should not be used afterwards.
+   */
+  public ColumnarTable<T>[] splitAt(int column, int threshold) {
+    int base = activeColumns[column];
+    int[] position = (bins != null && binCodes[base] != null) ? bins[base] : ranks[base];
+    int[] groupOf = new int[position.length];
+    for (int code = 0; code < position.length; code++) {
+      groupOf[code] = (position[code] <= threshold) ? 0 : 1;
+    }
+    return partition(column, groupOf, 2, activeColumns);
+  }
+
+  /**
+   * Groups the rows of this view by groupOf[code] of their code in the
+   * column, keeping their order within each group, in the row indices and
+   * in every presorted order, and returns a view of each group with the
+   * given columns
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  ColumnarTable<T>[] partition(int column, int[] groupOf, int groupCount, int[] childColumns) {
+    int[] x = columns[activeColumns[column]];
+
+    // Find where each group starts, then place each row in its group
+    int[] groupStarts = new int[groupCount + 1];
+    for (int i = start; i < end; i++) {
+      groupStarts[groupOf[x[rows[i]]] + 1]++;
+    }
+    groupStarts[0] = start;
+    for (int group = 0; group < groupCount; group++) {
+      groupStarts[group + 1] += groupStarts[group];
+    }
+
+    regroup(rows, x, groupOf, groupStarts);
+    if (sorted != null) {
+      for (int[] order : sorted) {
+        if (order != null) {
+          regroup(order, x, groupOf, groupStarts);
+        }
+      }
+    }
+
+    ColumnarTable<T>[] children = new ColumnarTable[groupCount];
+    for (int group = 0; group < groupCount; group++) {
+      children[group] = new ColumnarTable<T>(this, groupStarts[group], groupStarts[group + 1],
+                                             childColumns);
+    }
+    if (histogram != null) {
+      subtractHistograms(children);
+    }
+    return children;
+  }
+
+  /**
+   * Gives each child its histograms, counting the rows of all but the
+   * largest child and taking the largest child's as this view's minus the
+   * others'. This view's histograms are reused for it.
+   */
+  void subtractHistograms(ColumnarTable<T>[] children) {
+    int largest = 0;
+    for (int group = 1; group < children.length; group++) {
+      if (children[group].rowCount() > children[largest].rowCount()) {
+        largest = group;
+      }
+    }
+    for (int group = 0; group < children.length; group++) {
+      if (group == largest) {
+        continue;
+      }
+      children[group].histogram = children[group].countBins();
+      for (int column : children[largest].activeColumns) {
+        if (histogram[column] != null) {
+          int[] count = children[group].histogram[column];
+          for (int i = 0; i < count.length; i++) {
+            histogram[column][i] -= count[i];
+          }
+        }
+      }
+    }
+
+    int[][] rest = new int[columns.length][];
+    for (int column : children[largest].activeColumns) {
+      rest[column] = histogram[column];
+    }
+    children[largest].histogram = rest;
+    histogram = null;
+  }
+
+  // Stably groups this view's range of order by the group of each row's code in x
+  void regroup(int[] order, int[] x, int[] groupOf, int[] groupStarts) {
+    int[] next = Arrays.copyOf(groupStarts, groupStarts.length - 1);
+    for (int i = start; i < end; i++) {
+      scratch[next[groupOf[x[order[i]]]]++] = order[i];
+    }
+    System.arraycopy(scratch, start, order, start, end - start);
+  }
+
+  public int rowCount() {
+    return end - start;
+  }
+
+  public int columnCount() {
+    return activeColumns.length;
+  }
+
+  // returns the index of the column in the base table
+  public int getBaseColumn(int column) {
+    return activeColumns[column];
+  }
+
+  public String getName(int column) {
+    return names[activeColumns[column]];
+  }
+
+  public ValueDictionary<T> getDictionary(int column) {
+    return dictionaries[activeColumns[column]];
+  }
+
+  public String getTargetName() {
+    return targetName;
+  }
+
+  public void setTargetName(String targetName) {
+    this.targetName = targetName;
+  }
+
+  public ValueDictionary<T> getTargetDictionary() {
+    return targetDictionary;
+  }
+
+  public int getCode(int row, int column) {
+    return columns[activeColumns[column]][rows[start + row]];
+  }
+
+  public int getTargetCode(int row) {
+    return target[rows[start + row]];
+  }
+}
@@ -0,0 +1,250 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * A trained decision tree flattened into one int[] for fast prediction.
+ *
+ * Each node is a record at some offset of nodes: the column it splits on
+ * (-1 for a leaf), the code of its prediction, and then, for a split node,
+ * one slot per code of the split column's dictionary holding the offset of
+ * the child for that value, or -1 if no child has it. Nodes are laid out in
+ * preorder from offset 0, the root.
+ *
+ * The column dictionaries hold the attribute values that appear in the
+ * tree. Rows are encoded with them once (see encode), and predicting an
+ * encoded row takes one lookup of the child table per level and allocates
+ * nothing. A value the tree has never split on gets code -1 and, like a
+ * value with no matching child in TreeNode.predict, ends the walk at the
+ * current node.
+ *
+ * A node split at a threshold stores -2 - column as its column, then the
+ * index of its threshold among the sorted thresholds of that column, and
+ * the offsets of its AT_MOST and ABOVE children. Values of such a column
+ * are encoded as the number of the column's thresholds below them, so a
+ * value is at most threshold k exactly when its code is at most k, and the
+ * walk still compares only ints.
+ */
+public class CompiledTree<T> {
+  static final int COLUMN = 0;
+  static final int PREDICTION = 1;
+  static final int CHILDREN = 2;
+  static final int THRESHOLD = 2;
+  static final int AT_MOST_CHILD = 3;
+  static final int ABOVE_CHILD = 4;
+  static final int LEAF = -1;
+
+  int[] nodes;
+  int nodeCount;
+  String[] names;
+  ValueDictionary<T>[] dictionaries;
+  // The sorted thresholds of each column split at thresholds, or null
+  double[][] thresholds;
+  ValueDictionary<String> classes;
+
+  public CompiledTree(int[] nodes, int nodeCount, String[] names, ValueDictionary<T>[] dictionaries,
+                      double[][] thresholds, ValueDictionary<String> classes) {
+    this.nodes = nodes;
+    this.nodeCount = nodeCount;
+    this.names = names;
+    this.dictionaries = dictionaries;
+    this.thresholds = thresholds;
+    this.classes = classes;
+  }
+
+  // Compiles the tree below root, which is left unchanged
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public static <T> CompiledTree<T> fromTree(TreeNode<T> root) {
+    // First walk: find the columns and collect the name and values of each
+    int columnCount = columnCount(root);
+    String[] names = new String[columnCount];
+    Arrays.fill(names, "");
+    ValueDictionary<T>[] dictionaries = new ValueDictionary[columnCount];
+    for (int column = 0; column < columnCount; column++) {
+      dictionaries[column] = new ValueDictionary<T>();
+    }
+    TreeSet<Double>[] thresholdSets = new TreeSet[columnCount];
+    collectValues(root, names, dictionaries, thresholdSets);
+    double[][] thresholds = new double[columnCount][];
+    for (int column = 0; column < columnCount; column++) {
+      if (thresholdSets[column] != null) {
+        thresholds[column] = new double[thresholdSets[column].size()];
+        int i = 0;
+        for (double threshold : thresholdSets[column]) {
+          thresholds[column][i++] = threshold;
+        }
+      }
+    }
+
+    // Second walk: lay the nodes out in preorder
+    CompiledTree<T> tree = new CompiledTree<T>(new int[recordSize(root, dictionaries)], 0, names,
+                                               dictionaries, thresholds,
+                                               new ValueDictionary<String>());
+    tree.layOut(root, 0);
+    return tree;
+  }
+
+  // returns one more than the largest attribute index split on below node
+  static <T> int columnCount(TreeNode<T> node) {
+    int count = 0;
+    for (TreeNode<T> child : node.children) {
+      count = Math.max(count, Math.max(child.attributeIndex + 1, columnCount(child)));
+    }
+    return count;
+  }
+
+  static <T> void collectValues(TreeNode<T> node, String[] names, ValueDictionary<T>[] dictionaries,
+                                TreeSet<Double>[] thresholds) {
+    for (TreeNode<T> child : node.children) {
+      names[child.attributeIndex] = child.attributeName;
+      if (child.comparison == TreeNode.EQUALS) {
+        dictionaries[child.attributeIndex].encode(child.attributeValue);
+      } else {
+        if (thresholds[child.attributeIndex] == null) {
+          thresholds[child.attributeIndex] = new TreeSet<Double>();
+        }
+        thresholds[child.attributeIndex].add(child.threshold);
+      }
+      collectValues(child, names, dictionaries, thresholds);
+    }
+  }
+
+  // returns the number of ints the records of node and its subtree take up
+  static <T> int recordSize(TreeNode<T> node, ValueDictionary<T>[] dictionaries) {
+    if (node.children.isEmpty()) {
+      return CHILDREN;
+    }
+    int size;
+    if (node.children.get(0).comparison == TreeNode.EQUALS) {
+      size = CHILDREN + dictionaries[node.children.get(0).attributeIndex].size();
+    } else {
+      size = ABOVE_CHILD + 1;
+    }
+    for (TreeNode<T> child : node.children) {
+      size += recordSize(child, dictionaries);
+    }
+    return size;
+  }
+
+  // Writes the records of node and its subtree from offset, returning the offset after them
+  int layOut(TreeNode<T> node, int offset) {
+    nodeCount++;
+    nodes[offset + PREDICTION] = classes.encode(node.nodePrediction);
+    if (node.children.isEmpty()) {
+      nodes[offset + COLUMN] = LEAF;
+      return offset + CHILDREN;
+    }
+
+    int column = node.children.get(0).attributeIndex;
+    if (node.children.get(0).comparison != TreeNode.EQUALS) {
+      nodes[offset + COLUMN] = -2 - column;
+      nodes[offset + THRESHOLD] = Arrays.binarySearch(thresholds[column],
+                                                      node.children.get(0).threshold);
+      nodes[offset + AT_MOST_CHILD] = -1;
+      nodes[offset + ABOVE_CHILD] = -1;
+      int next = offset + ABOVE_CHILD + 1;
+      for (TreeNode<T> child : node.children) {
+        int slot = (child.comparison == TreeNode.AT_MOST) ? AT_MOST_CHILD : ABOVE_CHILD;
+        nodes[offset + slot] = next;
+        next = layOut(child, next);
+      }
+      return next;
+    }
+    nodes[offset + COLUMN] = column;
+    Arrays.fill(nodes, offset + CHILDREN, offset + CHILDREN + dictionaries[column].size(), -1);
+    int next = offset + CHILDREN + dictionaries[column].size();
+    for (TreeNode<T> child : node.children) {
+      nodes[offset + CHILDREN + dictionaries[column].codeOf(child.attributeValue)] = next;
+      next = layOut(child, next);
+    }
+    return next;
+  }
+
+  /**
+   * Encodes a row with the tree's dictionaries into codes, which must hold
+   * columnCount() ints. Values the tree never splits on get code -1.
+   */
+  public int[] encode(List<T> row, int[] codes) {
+    for (int column = 0; column < dictionaries.length; column++) {
+      codes[column] = (column < row.size()) ? codeOf(column, row.get(column)) : -1;
+    }
+    return codes;
+  }
+
+  /**
+   * returns the tree's code for a value of the column: its dictionary code
+   * or, for a column split at thresholds, the number of thresholds below
+   * it. Values the tree cannot place get -1.
+   */
+  public int codeOf(int column, T value) {
+    if (thresholds[column] == null) {
+      return dictionaries[column].codeOf(value);
+    }
+    double number = ColumnarTable.numericValue(value);
+    if (Double.isNaN(number)) {
+      return -1;
+    }
+    int index = Arrays.binarySearch(thresholds[column], number);
+    return (index >= 0) ? index : -index - 1;
+  }
+
+  // returns the code of the prediction for a row encoded by encode
+  public int predictCode(int[] codes) {
+    int offset = 0;
+    int column;
+    while ((column = nodes[offset + COLUMN]) != LEAF) {
+      int child;
+      if (column >= 0) {
+        int code = codes[column];
+        child = (code < 0) ? -1 : nodes[offset + CHILDREN + code];
+      } else {
+        int code = codes[-2 - column];
+        int slot = (code <= nodes[offset + THRESHOLD]) ? AT_MOST_CHILD : ABOVE_CHILD;
+        child = (code < 0) ? -1 : nodes[offset + slot];
+      }
+      if (child < 0) {
+        break;
+      }
+      offset = child;
+    }
+    return nodes[offset + PREDICTION];
+  }
+
+  // returns the prediction for a row encoded by encode
+  public String predict(int[] codes) {
+    return classes.valueOf(predictCode(codes));
+  }
+
+  // Encodes and predicts a single row, as TreeNode.predict does
+  public String predict(List<T> row) {
+    return predict(encode(row, new int[dictionaries.length]));
+  }
+
+  // returns the number of columns an encoded row has
+  public int columnCount() {
+    return dictionaries.length;
+  }
+
+  public int nodeCount() {
+    return nodeCount;
+  }
+
+  // returns the name of the column, or "" if the tree never splits on it
+  public String getName(int column) {
+    return names[column];
+  }
+
+  public ValueDictionary<T> getDictionary(int column) {
+    return dictionaries[column];
+  }
+
+  // returns the sorted thresholds of a column split at thresholds, or null
+  public double[] getThresholds(int column) {
+    return thresholds[column];
+  }
+
+  // returns the dictionary of the predicted classes, which predictCode returns codes of
+  public ValueDictionary<String> getClasses() {
+    return classes;
+  }
+}
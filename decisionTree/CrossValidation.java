@@ -0,0 +1,74 @@
+import java.util.List;
+
+/**
+ * The results of a cross-validation by CrossValidator: the evaluation of
+ * each fold, their total, the prediction made for every row when it was
+ * held out, and the time taken.
+ */
+public class CrossValidation {
+  public List<Evaluation> folds;
+  public Evaluation total;
+  // Index in total.labels of the class predicted for each row of the table
+  public int[] predictions;
+  public long[] trainNanos;
+  public long[] testNanos;
+  public long elapsedNanos;
+
+  public CrossValidation(List<Evaluation> folds, Evaluation total, int[] predictions,
+                         long[] trainNanos, long[] testNanos, long elapsedNanos) {
+    this.folds = folds;
+    this.total = total;
+    this.predictions = predictions;
+    this.trainNanos = trainNanos;
+    this.testNanos = testNanos;
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  public int foldCount() {
+    return folds.size();
+  }
+
+  public Evaluation getFold(int fold) {
+    return folds.get(fold);
+  }
+
+  // returns the mean of the folds' accuracies
+  public double meanAccuracy() {
+    double sum = 0;
+    for (Evaluation fold : folds) {
+      sum += fold.accuracy();
+    }
+    return sum / folds.size();
+  }
+
+  // returns the standard deviation of the folds' accuracies
+  public double accuracyStandardDeviation() {
+    double mean = meanAccuracy();
+    double sum = 0;
+    for (Evaluation fold : folds) {
+      sum += (fold.accuracy() - mean) * (fold.accuracy() - mean);
+    }
+    return Math.sqrt(sum / folds.size());
+  }
+
+  // Prints a line for each fold, then the totals and the confusion matrix, in one write
+  public void print() {
+    StringBuilder out = new StringBuilder("fold\trows\tcorrect\taccuracy\tfalse positive rate\ttrain ms\ttest ms\n");
+    for (int fold = 0; fold < folds.size(); fold++) {
+      Evaluation evaluation = folds.get(fold);
+      out.append(fold).append('\t')
+         .append(evaluation.total).append('\t')
+         .append(evaluation.correct).append('\t')
+         .append(evaluation.accuracy() * 100).append('\t')
+         .append(evaluation.falsePositiveRate() * 100).append('\t')
+         .append(trainNanos[fold] / 1e6).append('\t')
+         .append(testNanos[fold] / 1e6).append('\n');
+    }
+    out.append("Mean accuracy: ").append(meanAccuracy() * 100)
+       .append(" (standard deviation ").append(accuracyStandardDeviation() * 100).append(")\n");
+    out.append("Elapsed ms: ").append(elapsedNanos / 1e6).append('\n');
+    total.appendTo(out);
+    total.appendConfusionTo(out);
+    System.out.print(out);
+  }
+}
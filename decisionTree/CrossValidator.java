@@ -0,0 +1,209 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Estimates how well trees built by a TreeBuilder predict unseen rows, by
+ * k-fold cross-validation.
+ *
+ * The rows of the table are shuffled with a Random seeded with seed and
+ * dealt into k folds of nearly equal size. Each fold is scored by a tree
+ * trained on the other k - 1 folds. The folds are index arrays over the one
+ * encoded table (see ColumnarTable.sample), so no column data is copied,
+ * and each fold's rows are kept in table order, so the results do not
+ * depend on thread scheduling. When given a ForkJoinPool (see
+ * setParallelism), folds are trained and scored concurrently, each on a
+ * single thread.
+ */
+public class CrossValidator<T> implements AutoCloseable {
+  long seed;
+  TreeBuilder<T> treeBuilder;
+
+  // Pool for validating folds in parallel, or null to validate sequentially
+  ForkJoinPool pool;
+  // Whether pool was made by setParallelism rather than given to setPool
+  boolean ownsPool;
+
+  public CrossValidator() {
+    this.seed = 1;
+    this.treeBuilder = new TreeBuilder<T>();
+  }
+
+  public CrossValidation validate(DataTable<T> data, int foldCount, String positiveClass) {
+    return validate(data.columnar(), foldCount, positiveClass);
+  }
+
+  /**
+   * Cross-validates over foldCount folds of the rows of data, which is left
+   * unchanged, counting predictions of positiveClass that are wrong as
+   * false positives
+   */
+  public CrossValidation validate(ColumnarTable<T> data, int foldCount, String positiveClass) {
+    long start = System.nanoTime();
+    int[] baseRows = data.baseRows();
+    if (foldCount < 2 || foldCount > baseRows.length) {
+      throw new IllegalArgumentException("Cannot split " + baseRows.length + " rows into " +
+                                         foldCount + " folds");
+    }
+    int[] baseColumns = new int[data.columnCount()];
+    for (int column = 0; column < baseColumns.length; column++) {
+      baseColumns[column] = data.getBaseColumn(column);
+    }
+
+    // Deal the shuffled positions of the rows into folds
+    int[] positions = new int[baseRows.length];
+    for (int i = 0; i < positions.length; i++) {
+      positions[i] = i;
+    }
+    Random random = new Random(seed);
+    for (int i = positions.length - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int swap = positions[i];
+      positions[i] = positions[j];
+      positions[j] = swap;
+    }
+    int[][] folds = new int[foldCount][];
+    for (int fold = 0; fold < foldCount; fold++) {
+      folds[fold] = Arrays.copyOfRange(positions, (int) ((long) fold * positions.length / foldCount),
+                                       (int) ((long) (fold + 1) * positions.length / foldCount));
+      Arrays.sort(folds[fold]);
+    }
+
+    List<FoldTask> tasks = new ArrayList<FoldTask>();
+    for (int fold = 0; fold < foldCount; fold++) {
+      tasks.add(new FoldTask(data, baseRows, baseColumns, folds, fold, positiveClass));
+    }
+    if (pool != null) {
+      pool.invoke(new RecursiveTask<Void>() {
+        protected Void compute() {
+          invokeAll(tasks);
+          return null;
+        }
+      });
+    } else {
+      for (FoldTask task : tasks) {
+        task.invoke();
+      }
+    }
+
+    List<Evaluation> evaluations = new ArrayList<Evaluation>();
+    long[] trainNanos = new long[foldCount];
+    long[] testNanos = new long[foldCount];
+    for (int fold = 0; fold < foldCount; fold++) {
+      evaluations.add(tasks.get(fold).getRawResult());
+      trainNanos[fold] = tasks.get(fold).trainNanos;
+      testNanos[fold] = tasks.get(fold).testNanos;
+    }
+    Evaluation total = Evaluation.merge(evaluations, positiveClass);
+
+    // Translate each fold's predictions to the labels of the total
+    int[] predictions = new int[baseRows.length];
+    for (int fold = 0; fold < foldCount; fold++) {
+      List<String> labels = evaluations.get(fold).labels;
+      int[] foldPredictions = tasks.get(fold).predictions;
+      for (int i = 0; i < folds[fold].length; i++) {
+        predictions[folds[fold][i]] = total.labels.indexOf(labels.get(foldPredictions[i]));
+      }
+    }
+    return new CrossValidation(evaluations, total, predictions, trainNanos, testNanos,
+                               System.nanoTime() - start);
+  }
+
+  // Trains a tree on every fold but one and scores the rows of that fold
+  @SuppressWarnings("serial")
+  class FoldTask extends RecursiveTask<Evaluation> {
+    ColumnarTable<T> data;
+    int[] baseRows;
+    int[] baseColumns;
+    int[][] folds;
+    int fold;
+    String positiveClass;
+    int[] predictions;
+    long trainNanos, testNanos;
+
+    FoldTask(ColumnarTable<T> data, int[] baseRows, int[] baseColumns, int[][] folds, int fold,
+             String positiveClass) {
+      this.data = data;
+      this.baseRows = baseRows;
+      this.baseColumns = baseColumns;
+      this.folds = folds;
+      this.fold = fold;
+      this.positiveClass = positiveClass;
+    }
+
+    protected Evaluation compute() {
+      long start = System.nanoTime();
+      int[] trainRows = new int[baseRows.length - folds[fold].length];
+      int[] inFold = new int[baseRows.length];
+      Arrays.fill(inFold, -1);
+      for (int i = 0; i < folds[fold].length; i++) {
+        inFold[folds[fold][i]] = i;
+      }
+      int[] testRows = new int[folds[fold].length];
+      for (int position = 0, next = 0; position < baseRows.length; position++) {
+        if (inFold[position] >= 0) {
+          testRows[inFold[position]] = baseRows[position];
+        } else {
+          trainRows[next++] = baseRows[position];
+        }
+      }
+
+      TreeNode<T> root = new TreeNode<T>();
+      treeBuilder.build(root, data.sample(trainRows, baseColumns));
+      CompiledTree<T> tree = CompiledTree.fromTree(root);
+      long trained = System.nanoTime();
+      trainNanos = trained - start;
+
+      predictions = new int[testRows.length];
+      Evaluation evaluation = new BatchPredictor<T>(tree)
+          .evaluate(data.sample(testRows, baseColumns), positiveClass, predictions);
+      testNanos = System.nanoTime() - trained;
+      return evaluation;
+    }
+  }
+
+  // Sets the seed of the Random that deals the rows into folds
+  public void setSeed(long seed) {
+    this.seed = seed;
+  }
+
+  /**
+   * Sets the builder used for each fold's tree, for its numeric split and
+   * histogram settings. It should not have a pool of its own.
+   */
+  public void setTreeBuilder(TreeBuilder<T> treeBuilder) {
+    this.treeBuilder = treeBuilder;
+  }
+
+  /**
+   * Sets the number of threads used to validate folds. A parallelism of 1
+   * validates on the calling thread.
+   */
+  public void setParallelism(int parallelism) {
+    close();
+    pool = (parallelism > 1) ? new ForkJoinPool(parallelism) : null;
+    ownsPool = (pool != null);
+  }
+
+  // Validates folds on a shared pool, or sequentially if pool is null
+  public void setPool(ForkJoinPool pool) {
+    close();
+    this.pool = pool;
+  }
+
+  /**
+   * Shuts down the pool made by setParallelism, if any, and goes back to
+   * running sequentially. A pool given to setPool is left running.
+   */
+  @Override
+  public void close() {
+    if (ownsPool) {
+      pool.shutdown();
+      pool = null;
+      ownsPool = false;
+    }
+  }
+}
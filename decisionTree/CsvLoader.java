@@ -0,0 +1,398 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Reads CSV files straight into a dictionary-encoded ColumnarTable.
+ *
+ * The first line holds the attribute names and every other line a row,
+ * with fields separated by commas and lines ended by \n, \r or \r\n. Blank
+ * lines are skipped, and so are fields past the number of names in the
+ * header. A field of just ? is a missing value and is read as the empty
+ * value, as DecisionTree.readCsv always has. There is no quoting.
+ *
+ * The file is memory mapped in chunks that end on line boundaries. Each
+ * field's bytes are looked up in a hash table of the column's values seen
+ * so far, so a String is only made the first time a value is seen. When
+ * given a ForkJoinPool (see setParallelism), chunks are parsed in parallel,
+ * each with its own dictionaries. The dictionaries are then merged in file
+ * order, so values get the same codes as a sequential read gives them.
+ */
+public class CsvLoader implements AutoCloseable {
+  static final int MIN_CHUNK_BYTES = 1 << 20;
+  static final int MAX_CHUNK_BYTES = 1 << 30;
+  static final int PROBE_BYTES = 1 << 12;
+
+  // Pool for parsing chunks in parallel, or null to parse sequentially
+  ForkJoinPool pool;
+  // Whether pool was made by setParallelism rather than given to setPool
+  boolean ownsPool;
+
+  /**
+   * Reads the file into a table, with the column targetColumn (from 0) as
+   * the target and every other column as an attribute
+   */
+  public ColumnarTable<String> read(String fileName, int targetColumn) throws IOException {
+    EncodedColumns<String> columns = readColumns(fileName);
+    if (targetColumn < 0 || targetColumn >= columns.columnCount()) {
+      throw new IOException("No column " + targetColumn + " in " + fileName);
+    }
+    return columns.toTable(targetColumn);
+  }
+
+  // Reads every column of the file, in file order, leaving the choice of target to the caller
+  public EncodedColumns<String> readColumns(String fileName) throws IOException {
+    try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+      long fileSize = channel.size();
+      long[] header = new long[1];
+      String[] names = readHeader(channel, fileName, header);
+
+      long[] bounds = chunkBounds(channel, header[0], fileSize);
+      List<ChunkTask> tasks = new ArrayList<ChunkTask>();
+      for (int i = 0; i + 1 < bounds.length; i++) {
+        tasks.add(new ChunkTask(channel, fileName, bounds[i], bounds[i + 1], names.length));
+      }
+      if (pool != null && tasks.size() > 1) {
+        pool.invoke(new RecursiveTask<Void>() {
+          protected Void compute() {
+            invokeAll(tasks);
+            return null;
+          }
+        });
+      } else {
+        for (ChunkTask task : tasks) {
+          task.invoke();
+        }
+      }
+
+      List<ColumnParser[]> chunks = new ArrayList<ColumnParser[]>();
+      for (ChunkTask task : tasks) {
+        if (task.failure != null) {
+          throw task.failure;
+        }
+        chunks.add(task.columns);
+      }
+      return merge(names, chunks);
+    }
+  }
+
+  /**
+   * Reads the attribute names from the first line, storing the position
+   * just after it in end[0]
+   */
+  static String[] readHeader(FileChannel channel, String fileName, long[] end) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(PROBE_BYTES);
+    byte[] line = new byte[0];
+    long position = 0;
+    while (true) {
+      buffer.clear();
+      int bytesRead = channel.read(buffer, position);
+      if (bytesRead <= 0) {
+        if (line.length == 0) {
+          throw new IOException("No header line in " + fileName);
+        }
+        end[0] = position;
+        break;
+      }
+      int terminator = indexOfTerminator(buffer.array(), 0, bytesRead);
+      int length = (terminator == -1) ? bytesRead : terminator;
+      line = Arrays.copyOf(line, line.length + length);
+      System.arraycopy(buffer.array(), 0, line, line.length - length, length);
+      position += length;
+      if (terminator != -1) {
+        end[0] = position + 1;
+        break;
+      }
+    }
+    return new String(line, StandardCharsets.UTF_8).split(",", -1);
+  }
+
+  /**
+   * Splits the rows from start to fileSize into chunks, each starting just
+   * after a line terminator, and returns the chunk boundaries
+   */
+  long[] chunkBounds(FileChannel channel, long start, long fileSize) throws IOException {
+    long dataSize = Math.max(0, fileSize - start);
+    long chunkCount = (dataSize + MAX_CHUNK_BYTES - 1) / MAX_CHUNK_BYTES;
+    if (pool != null) {
+      long parallelChunks = Math.min(4L * pool.getParallelism(), dataSize / MIN_CHUNK_BYTES);
+      chunkCount = Math.max(chunkCount, parallelChunks);
+    }
+    chunkCount = Math.max(1, chunkCount);
+
+    List<Long> bounds = new ArrayList<Long>();
+    bounds.add(start);
+    ByteBuffer probe = ByteBuffer.allocate(PROBE_BYTES);
+    for (long i = 1; i < chunkCount; i++) {
+      long position = Math.max(start + dataSize * i / chunkCount, bounds.get(bounds.size() - 1));
+      // Move the boundary forward to just after the next line terminator
+      while (position < fileSize) {
+        probe.clear();
+        int bytesRead = channel.read(probe, position);
+        if (bytesRead <= 0) {
+          position = fileSize;
+          break;
+        }
+        int terminator = indexOfTerminator(probe.array(), 0, bytesRead);
+        if (terminator != -1) {
+          position += terminator + 1;
+          break;
+        }
+        position += bytesRead;
+      }
+      if (position < fileSize && position > bounds.get(bounds.size() - 1)) {
+        bounds.add(position);
+      }
+    }
+    bounds.add(Math.max(start, fileSize));
+
+    long[] result = new long[bounds.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = bounds.get(i);
+      if (i > 0 && result[i] - result[i - 1] > Integer.MAX_VALUE) {
+        throw new IOException("Line longer than " + Integer.MAX_VALUE + " bytes");
+      }
+    }
+    return result;
+  }
+
+  static int indexOfTerminator(byte[] bytes, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (bytes[i] == '\n' || bytes[i] == '\r') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  // Parses the rows of one chunk into its own columns, keeping any error to rethrow
+  @SuppressWarnings("serial")
+  static class ChunkTask extends RecursiveTask<Void> {
+    FileChannel channel;
+    String fileName;
+    long start, end;
+    ColumnParser[] columns;
+    IOException failure;
+
+    ChunkTask(FileChannel channel, String fileName, long start, long end, int columnCount) {
+      this.channel = channel;
+      this.fileName = fileName;
+      this.start = start;
+      this.end = end;
+      this.columns = new ColumnParser[columnCount];
+      for (int column = 0; column < columnCount; column++) {
+        columns[column] = new ColumnParser();
+      }
+    }
+
+    protected Void compute() {
+      try {
+        parse(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+      } catch (IOException ioe) {
+        failure = ioe;
+      }
+      return null;
+    }
+
+    void parse(MappedByteBuffer buffer) throws IOException {
+      int limit = buffer.limit();
+      int position = 0;
+      while (position < limit) {
+        byte b = buffer.get(position);
+        if (b == '\n' || b == '\r') {
+          position++;
+          continue;
+        }
+
+        int lineStart = position;
+        int field = 0;
+        int fieldStart = position;
+        while (true) {
+          b = (position < limit) ? buffer.get(position) : (byte) '\n';
+          if (b == ',' || b == '\n' || b == '\r') {
+            if (field < columns.length) {
+              columns[field].add(buffer, fieldStart, position);
+            }
+            field++;
+            fieldStart = position + 1;
+          }
+          position++;
+          if (b == '\n' || b == '\r') {
+            break;
+          }
+        }
+        if (field < columns.length) {
+          throw malformed(lineStart);
+        }
+      }
+    }
+
+    IOException malformed(int lineStart) {
+      return new IOException("Expected at least " + columns.length + " fields on the line at byte " +
+                             (start + lineStart) + " of " + fileName);
+    }
+  }
+
+  /**
+   * The codes of one column of a chunk, with a hash table from the bytes of
+   * each value to its code. Codes are numbered in the order values are
+   * first seen in the chunk.
+   */
+  static class ColumnParser {
+    int[] codes;
+    int rowCount;
+    byte[][] keys;
+    int[] hashes;
+    int keyCount;
+    // Open addressing table of code + 1 for each slot, 0 for an empty slot
+    int[] slots;
+
+    ColumnParser() {
+      this.codes = new int[1024];
+      this.keys = new byte[16][];
+      this.hashes = new int[16];
+      this.slots = new int[32];
+    }
+
+    void add(ByteBuffer buffer, int from, int to) {
+      // A lone ? is a missing value, which is read as the empty value
+      if (to - from == 1 && buffer.get(from) == '?') {
+        to = from;
+      }
+      if (rowCount == codes.length) {
+        codes = Arrays.copyOf(codes, 2 * codes.length);
+      }
+      codes[rowCount++] = codeOf(buffer, from, to);
+    }
+
+    int codeOf(ByteBuffer buffer, int from, int to) {
+      int hash = 0;
+      for (int i = from; i < to; i++) {
+        hash = 31 * hash + buffer.get(i);
+      }
+      int mask = slots.length - 1;
+      int slot = (hash ^ (hash >>> 16)) & mask;
+      while (slots[slot] != 0) {
+        int code = slots[slot] - 1;
+        if (hashes[code] == hash && equals(keys[code], buffer, from, to)) {
+          return code;
+        }
+        slot = (slot + 1) & mask;
+      }
+
+      byte[] key = new byte[to - from];
+      for (int i = from; i < to; i++) {
+        key[i - from] = buffer.get(i);
+      }
+      if (keyCount == keys.length) {
+        keys = Arrays.copyOf(keys, 2 * keys.length);
+        hashes = Arrays.copyOf(hashes, 2 * hashes.length);
+      }
+      keys[keyCount] = key;
+      hashes[keyCount] = hash;
+      slots[slot] = ++keyCount;
+      if (2 * keyCount > slots.length) {
+        rehash();
+      }
+      return keyCount - 1;
+    }
+
+    static boolean equals(byte[] key, ByteBuffer buffer, int from, int to) {
+      if (key.length != to - from) {
+        return false;
+      }
+      for (int i = 0; i < key.length; i++) {
+        if (key[i] != buffer.get(from + i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    void rehash() {
+      slots = new int[2 * slots.length];
+      int mask = slots.length - 1;
+      for (int code = 0; code < keyCount; code++) {
+        int slot = (hashes[code] ^ (hashes[code] >>> 16)) & mask;
+        while (slots[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        slots[slot] = code + 1;
+      }
+    }
+  }
+
+  /**
+   * Builds the columns from the parsed chunks. Each column's dictionary takes
+   * the values of every chunk in file order, and the chunk codes are
+   * translated to dictionary codes as they are copied into the column.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  static EncodedColumns<String> merge(String[] names, List<ColumnParser[]> chunks) {
+    int rowCount = 0;
+    for (ColumnParser[] chunk : chunks) {
+      rowCount += chunk[0].rowCount;
+    }
+
+    ValueDictionary<String>[] dictionaries = new ValueDictionary[names.length];
+    int[][] columns = new int[names.length][];
+    for (int column = 0; column < names.length; column++) {
+      dictionaries[column] = new ValueDictionary<String>();
+      columns[column] = new int[rowCount];
+      int next = 0;
+      for (ColumnParser[] chunk : chunks) {
+        ColumnParser parser = chunk[column];
+        int[] codeOf = new int[parser.keyCount];
+        for (int code = 0; code < parser.keyCount; code++) {
+          codeOf[code] = dictionaries[column].encode(new String(parser.keys[code],
+                                                                StandardCharsets.UTF_8));
+        }
+        for (int row = 0; row < parser.rowCount; row++) {
+          columns[column][next++] = codeOf[parser.codes[row]];
+        }
+        // Let the chunk's codes go as soon as they are copied
+        chunk[column] = null;
+      }
+    }
+
+    return new EncodedColumns<String>(names, dictionaries, columns, rowCount);
+  }
+
+  /**
+   * Sets the number of threads used to parse files. A parallelism of 1
+   * parses on the calling thread.
+   */
+  public void setParallelism(int parallelism) {
+    close();
+    pool = (parallelism > 1) ? new ForkJoinPool(parallelism) : null;
+    ownsPool = (pool != null);
+  }
+
+  // Parses files on a shared pool, or sequentially if pool is null
+  public void setPool(ForkJoinPool pool) {
+    close();
+    this.pool = pool;
+  }
+
+  /**
+   * Shuts down the pool made by setParallelism, if any, and goes back to
+   * running sequentially. A pool given to setPool is left running.
+   */
+  @Override
+  public void close() {
+    if (ownsPool) {
+      pool.shutdown();
+      pool = null;
+      ownsPool = false;
+    }
+  }
+}
@@ -6,26 +6,50 @@ import java.util.List;
 public class DataTable<T> {
   protected List<Attribute<T>> attributes;
   protected Attribute<T> targetAttribute;
+  protected ColumnarTable<T> columnar;
 
   public DataTable(List<Attribute<T>> attributes, Attribute<T> targetAttribute) {
     this.attributes = attributes;
     this.targetAttribute = targetAttribute;
   }
 
-  // returns the attribute x which maximizes information gain of result given x
-  public Attribute<T> maxInfoGainAttribute() {
-    Attribute<T> maxInfoGainAttribute = attributes.get(0);
-    Double maxInfoGain = informationGain(targetAttribute, attributes.get(0));
-
-    for (Attribute<T> attribute : attributes) {
-      Double currentInfoGain = informationGain(targetAttribute, attribute);
-      if (currentInfoGain > maxInfoGain) {
-        maxInfoGainAttribute = attribute;
-        maxInfoGain = currentInfoGain;
+  /**
+   * Decodes a columnar table into a DataTable. Equal values share one
+   * object, and the columnar table is kept as this table's encoded form.
+   */
+  public static <T> DataTable<T> fromColumnar(ColumnarTable<T> columnar) {
+    List<Attribute<T>> attributes = new ArrayList<Attribute<T>>();
+    for (int column = 0; column < columnar.columnCount(); column++) {
+      List<T> values = new ArrayList<T>(columnar.rowCount());
+      for (int row = 0; row < columnar.rowCount(); row++) {
+        values.add(columnar.getDictionary(column).valueOf(columnar.getCode(row, column)));
       }
+      attributes.add(new Attribute<T>(columnar.getName(column), values));
+    }
+    List<T> targetValues = new ArrayList<T>(columnar.rowCount());
+    for (int row = 0; row < columnar.rowCount(); row++) {
+      targetValues.add(columnar.getTargetDictionary().valueOf(columnar.getTargetCode(row)));
+    }
+
+    DataTable<T> table = new DataTable<T>(attributes, new Attribute<T>(columnar.getTargetName(), targetValues));
+    table.columnar = columnar;
+    return table;
+  }
+
+  /**
+   * returns the dictionary-encoded form of this table, which is built the
+   * first time it is needed, so the attributes should not change after that
+   */
+  public ColumnarTable<T> columnar() {
+    if (columnar == null) {
+      columnar = ColumnarTable.fromDataTable(this);
     }
+    return columnar;
+  }
 
-    return maxInfoGainAttribute;
+  // returns the attribute x which maximizes information gain of result given x
+  public Attribute<T> maxInfoGainAttribute() {
+    return attributes.get(columnar().maxInfoGainColumn());
   }
 
   /**
@@ -60,17 +84,23 @@ public class DataTable<T> {
    * The conditional entropy of Y, given X, is the following,
    * H(Y|X) = -1 * sum(P(Xi) entropyOf(Yi))
    * where Yi is only entries of Y where X = Xi
+   *
+   * Both attributes are encoded and the count of each pair of X and Y values
+   * is taken in a single scan, rather than filtering Y once per value of X
    */
   public Double conditionalEntropyOf(Attribute<T> attributeY, Attribute<T> attributeX) {
-    HashMap<T,Double> xProbabilities = getProbabilities(attributeX);
-
-    Double sum = 0.0;
-    for (T xValue : xProbabilities.keySet()) {
-      Attribute<T> conditionalYVals = filterAttribute(attributeY, attributeX, xValue);
-      sum += xProbabilities.get(xValue) * entropyOf(conditionalYVals);
+    ValueDictionary<T> xDictionary = new ValueDictionary<T>();
+    ValueDictionary<T> yDictionary = new ValueDictionary<T>();
+    int[] xCodes = ColumnarTable.encode(attributeX, xDictionary);
+    int[] yCodes = ColumnarTable.encode(attributeY, yDictionary);
+
+    int ySize = yDictionary.size();
+    int[] contingency = new int[xDictionary.size() * ySize];
+    for (int i = 0; i < xCodes.length; i++) {
+      contingency[xCodes[i] * ySize + yCodes[i]]++;
     }
 
-    return sum;
+    return ColumnarTable.conditionalEntropyOf(contingency, xDictionary.size(), ySize, xCodes.length);
   }
 
   public HashMap<T,Double> getProbabilities(Attribute<T> attribute) {
@@ -92,17 +122,8 @@ public class DataTable<T> {
 
   // returns the most commonly occurring value of the targetAttribute
   public T targetMajority() {
-    HashMap<T,Integer> supportHash = getSupportHash(targetAttribute);
-
-    T majorityValue = null;
-
-    for (T key : supportHash.keySet()) {
-      if (majorityValue == null || (supportHash.get(key) > supportHash.get(majorityValue))) {
-        majorityValue = key;
-      }
-    }
-
-    return majorityValue;
+    int majority = columnar().targetMajority();
+    return (majority == -1) ? null : columnar().getTargetDictionary().valueOf(majority);
   }
 
   /**
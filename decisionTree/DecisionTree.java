@@ -7,48 +7,33 @@ public class DecisionTree<T> {
   public static void main(String[] args) {
     DecisionTree<String> dTree = new DecisionTree<String>();
     DataTable<String> dTable = dTree.readCsv("data/processed.cleveland.csv", 13);
-    dTree.root = new TreeNode<String>();
-    dTree.root.attributeNameHash = dTable.getAttributeNameHash();
-    dTree.root = dTree.root.buildTree(dTable);
-
-    int total = 0;
-    int correct = 0;
-    int wrong = 0;
-    int falsePositives = 0;
-    double accuracy = 0.0;
-    double falsePositivePercent = 0.0;
+    dTree.root = new TreeBuilder<String>().build(dTable);
 
     DataTable<String> resultTable = dTree.readCsv("data/processed.switzerland.csv", 13);
-    List<Attribute<String>> testAttributes = resultTable.getAttributes();
     Attribute<String> targetAttribute = resultTable.getTargetAttribute();
 
-    List<List<String>> lists = dTree.asInstanceList(testAttributes);
-    for (List<String> list : lists) {
-      String prediction = dTree.root.predict(list);
-      System.out.print("Prediction: "+prediction+"\t Target Value: "+targetAttribute.get(lists.indexOf(list))+" ");
-      if(prediction.equals(targetAttribute.get(lists.indexOf(list)))) {
-        System.out.println("correct");
-        correct++;
+    // Score the whole test table at once with the compiled form of the tree
+    CompiledTree<String> compiledTree = CompiledTree.fromTree(dTree.root);
+    int[] predictions = new int[targetAttribute.size()];
+    Evaluation evaluation = new BatchPredictor<String>(compiledTree)
+        .evaluate(resultTable, "'present'", predictions);
+
+    // Print the predictions in one write rather than a line at a time
+    StringBuilder out = new StringBuilder();
+    for (int i = 0; i < predictions.length; i++) {
+      String prediction = compiledTree.getClasses().valueOf(predictions[i]);
+      out.append("Prediction: ").append(prediction)
+         .append("\t Target Value: ").append(targetAttribute.get(i)).append(' ');
+      if (prediction.equals(targetAttribute.get(i))) {
+        out.append("correct\n");
+      } else if (prediction.equals("'present'")) {
+        out.append("false positive\n");
       } else {
-        wrong++;
-        if (prediction.equals("'present'")) {
-          System.out.println("false positive");
-          falsePositives++;
-        } else {
-          System.out.println("incorrect");
-        }
+        out.append("incorrect\n");
       }
-      total++;
     }
-    accuracy = (double) correct / total;
-    falsePositivePercent = (double) falsePositives / total;
-
-    System.out.println("Total: " + total);
-    System.out.println("Correct: " + correct);
-    System.out.println("Wrong: " + wrong);
-    System.out.println("False positives: " + falsePositives);
-    System.out.println("Accuracy: " + (accuracy * 100));
-    System.out.println("False positive %: " + (falsePositivePercent * 100));
+    evaluation.appendTo(out);
+    System.out.print(out);
 
     dTree.root.print();
   }
@@ -69,36 +54,16 @@ public class DecisionTree<T> {
     return instanceList;
   }
 
+  /**
+   * Reads a CSV file with a header line into a DataTable, with column
+   * targetColNumber (0-indexed) as the target. Missing values, written as ?,
+   * are read as empty strings. See CsvLoader for the format.
+   */
   public DataTable<String> readCsv(String fileName, int targetColNumber) {
-    List<Attribute<String>> attributeList = new ArrayList<Attribute<String>>();
-
-    Scanner sc = null;
     try {
-      sc = new Scanner(new File(fileName));
-    } catch (FileNotFoundException fnfe) {
-      System.out.println("Cannot find file: " + fileName);
-    }
-
-    // Read first line and initialize attribute list with attribute names
-    for (String attributeName : sc.nextLine().split(",")) {
-      attributeList.add(new Attribute<String>(attributeName));
+      return DataTable.fromColumnar(new CsvLoader().read(fileName, targetColNumber));
+    } catch (IOException ioe) {
+      throw new UncheckedIOException("Cannot read file: " + fileName, ioe);
     }
-
-    // Fill in attributes with remaining data
-    int line = 0;
-    while (sc.hasNext()) {
-      String[] nextLine = sc.nextLine().split(",");
-      for (int i = 0; i < attributeList.size(); i++) {
-        Attribute<String> currentAttribute = attributeList.get(i);
-        if (nextLine[i].equals("?")) {
-          nextLine[i] = "";
-        }
-        currentAttribute.add(nextLine[i]);
-      }
-    }
-
-    Attribute<String> targetAttribute = attributeList.remove(targetColNumber);
-
-    return new DataTable<String>(attributeList, targetAttribute);
   }
 }
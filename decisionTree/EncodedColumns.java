@@ -0,0 +1,68 @@
+/**
+ * The dictionary-encoded columns of a file, in file order, before any of
+ * them has been chosen as the target. CsvLoader and TableCache produce
+ * these, and toTable turns them into a ColumnarTable for a given target
+ * column, so one parse or cache file serves every choice of target.
+ */
+public class EncodedColumns<T> {
+  String[] names;
+  ValueDictionary<T>[] dictionaries;
+  int[][] columns;
+  int rowCount;
+
+  public EncodedColumns(String[] names, ValueDictionary<T>[] dictionaries, int[][] columns,
+                        int rowCount) {
+    this.names = names;
+    this.dictionaries = dictionaries;
+    this.columns = columns;
+    this.rowCount = rowCount;
+  }
+
+  /**
+   * returns a table with the column targetColumn (from 0) as the target and
+   * every other column as an attribute. The table shares this object's
+   * columns and dictionaries.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public ColumnarTable<T> toTable(int targetColumn) {
+    if (targetColumn < 0 || targetColumn >= names.length) {
+      throw new IllegalArgumentException("No column " + targetColumn);
+    }
+    String[] attributeNames = new String[names.length - 1];
+    ValueDictionary<T>[] attributeDictionaries = new ValueDictionary[names.length - 1];
+    int[][] attributeColumns = new int[names.length - 1][];
+    for (int column = 0, next = 0; column < names.length; column++) {
+      if (column != targetColumn) {
+        attributeNames[next] = names[column];
+        attributeDictionaries[next] = dictionaries[column];
+        attributeColumns[next++] = columns[column];
+      }
+    }
+    ColumnarTable<T> table = new ColumnarTable<T>(attributeNames, attributeDictionaries,
+                                                  attributeColumns,
+                                                  dictionaries[targetColumn],
+                                                  columns[targetColumn]);
+    table.setTargetName(names[targetColumn]);
+    return table;
+  }
+
+  public int columnCount() {
+    return names.length;
+  }
+
+  public int rowCount() {
+    return rowCount;
+  }
+
+  public String getName(int column) {
+    return names[column];
+  }
+
+  public ValueDictionary<T> getDictionary(int column) {
+    return dictionaries[column];
+  }
+
+  public int getCode(int row, int column) {
+    return columns[column][row];
+  }
+}
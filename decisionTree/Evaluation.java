@@ -0,0 +1,123 @@
+import java.util.List;
+
+/**
+ * The results of scoring a table against its target column: the confusion
+ * matrix, with a row for each actual class and a column for each predicted
+ * class, and the totals taken from it.
+ */
+public class Evaluation {
+  public List<String> labels;
+  public int[][] confusion;
+  public String positiveClass;
+  public int total;
+  public int correct;
+  public int falsePositives;
+
+  public Evaluation(List<String> labels, int[][] confusion, String positiveClass) {
+    this.labels = labels;
+    this.confusion = confusion;
+    this.positiveClass = positiveClass;
+    int positive = labels.indexOf(positiveClass);
+    for (int actual = 0; actual < confusion.length; actual++) {
+      for (int predicted = 0; predicted < confusion.length; predicted++) {
+        total += confusion[actual][predicted];
+        if (actual == predicted) {
+          correct += confusion[actual][predicted];
+        } else if (predicted == positive) {
+          falsePositives += confusion[actual][predicted];
+        }
+      }
+    }
+  }
+
+  public int wrong() {
+    return total - correct;
+  }
+
+  public double accuracy() {
+    return (double) correct / total;
+  }
+
+  // returns the false positives as a fraction of all rows
+  public double falsePositiveFraction() {
+    return (double) falsePositives / total;
+  }
+
+  // returns the false positives as a fraction of the rows whose class is not positive
+  public double falsePositiveRate() {
+    int positive = labels.indexOf(positiveClass);
+    int negatives = 0;
+    for (int actual = 0; actual < confusion.length; actual++) {
+      for (int predicted = 0; predicted < confusion.length; predicted++) {
+        if (actual != positive) {
+          negatives += confusion[actual][predicted];
+        }
+      }
+    }
+    return (negatives == 0) ? 0.0 : (double) falsePositives / negatives;
+  }
+
+  /**
+   * returns the sum of several evaluations, with the labels of each in the
+   * order they first appear
+   */
+  public static Evaluation merge(List<Evaluation> evaluations, String positiveClass) {
+    ValueDictionary<String> labels = new ValueDictionary<String>();
+    for (Evaluation evaluation : evaluations) {
+      for (String label : evaluation.labels) {
+        labels.encode(label);
+      }
+    }
+    int[][] confusion = new int[labels.size()][labels.size()];
+    for (Evaluation evaluation : evaluations) {
+      int[] labelOf = new int[evaluation.labels.size()];
+      for (int i = 0; i < labelOf.length; i++) {
+        labelOf[i] = labels.encode(evaluation.labels.get(i));
+      }
+      for (int actual = 0; actual < labelOf.length; actual++) {
+        for (int predicted = 0; predicted < labelOf.length; predicted++) {
+          confusion[labelOf[actual]][labelOf[predicted]] += evaluation.confusion[actual][predicted];
+        }
+      }
+    }
+    return new Evaluation(labels.values, confusion, positiveClass);
+  }
+
+  public void print() {
+    StringBuilder out = new StringBuilder();
+    appendTo(out);
+    System.out.print(out);
+  }
+
+  // Appends the totals, a line each, as print prints them
+  public void appendTo(StringBuilder out) {
+    out.append("Total: ").append(total).append('\n');
+    out.append("Correct: ").append(correct).append('\n');
+    out.append("Wrong: ").append(wrong()).append('\n');
+    out.append("False positives: ").append(falsePositives).append('\n');
+    out.append("Accuracy: ").append(accuracy() * 100).append('\n');
+    out.append("False positive %: ").append(falsePositiveFraction() * 100).append('\n');
+  }
+
+  // Prints the confusion matrix with actual classes down the side
+  public void printConfusion() {
+    StringBuilder out = new StringBuilder();
+    appendConfusionTo(out);
+    System.out.print(out);
+  }
+
+  public void appendConfusionTo(StringBuilder out) {
+    out.append("actual \\ predicted");
+    for (String label : labels) {
+      out.append('\t').append(label);
+    }
+    out.append('\n');
+    for (int actual = 0; actual < confusion.length; actual++) {
+      out.append(labels.get(actual));
+      for (int predicted = 0; predicted < confusion.length; predicted++) {
+        out.append('\t').append(confusion[actual][predicted]);
+      }
+      out.append('\n');
+    }
+  }
+}
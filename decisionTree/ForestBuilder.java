@@ -0,0 +1,176 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Trains bagged ensembles of decision trees (random forests) for
+ * RandomForest.
+ *
+ * Each tree is trained on a bootstrap sample of the rows, drawn with
+ * replacement, and a random subset of the attributes. Both are index
+ * arrays into one shared table (see ColumnarTable.sample), so no column
+ * data is copied. Every tree is compiled as soon as it is built and its
+ * training views are dropped, so memory stays close to that of the table
+ * plus the compiled trees.
+ *
+ * Tree i draws its sample from a Random seeded with seed + i, so a forest
+ * is the same whichever threads its trees are built on. When given a
+ * ForkJoinPool (see setParallelism), trees are built concurrently, each on
+ * a single thread.
+ */
+public class ForestBuilder<T> implements AutoCloseable {
+  int treeCount;
+  int attributesPerTree;
+  long seed;
+  TreeBuilder<T> treeBuilder;
+
+  // Pool for building trees in parallel, or null to build sequentially
+  ForkJoinPool pool;
+  // Whether pool was made by setParallelism rather than given to setPool
+  boolean ownsPool;
+
+  public ForestBuilder() {
+    this.treeCount = 100;
+    this.attributesPerTree = 0;
+    this.seed = 1;
+    this.treeBuilder = new TreeBuilder<T>();
+  }
+
+  public RandomForest<T> build(DataTable<T> data) {
+    return build(data.columnar());
+  }
+
+  // Trains a forest on the rows and columns of data, which is left unchanged
+  public RandomForest<T> build(ColumnarTable<T> data) {
+    int[] baseRows = data.baseRows();
+    int[] baseColumns = new int[data.columnCount()];
+    for (int column = 0; column < baseColumns.length; column++) {
+      baseColumns[column] = data.getBaseColumn(column);
+    }
+
+    List<TreeTask> tasks = new ArrayList<TreeTask>();
+    for (int i = 0; i < treeCount; i++) {
+      tasks.add(new TreeTask(data, baseRows, baseColumns, seed + i));
+    }
+    if (pool != null) {
+      pool.invoke(new RecursiveTask<Void>() {
+        protected Void compute() {
+          invokeAll(tasks);
+          return null;
+        }
+      });
+    } else {
+      for (TreeTask task : tasks) {
+        task.invoke();
+      }
+    }
+
+    List<CompiledTree<T>> trees = new ArrayList<CompiledTree<T>>();
+    for (TreeTask task : tasks) {
+      trees.add(task.getRawResult());
+    }
+    return new RandomForest<T>(trees);
+  }
+
+  // returns the number of attributes each tree is given, by default the square root of the total
+  int attributesPerTree(int columnCount) {
+    if (attributesPerTree > 0) {
+      return Math.min(attributesPerTree, columnCount);
+    }
+    return Math.max(1, (int) Math.round(Math.sqrt(columnCount)));
+  }
+
+  // Builds and compiles one tree from its own sample of the rows and attributes
+  @SuppressWarnings("serial")
+  class TreeTask extends RecursiveTask<CompiledTree<T>> {
+    ColumnarTable<T> data;
+    int[] baseRows;
+    int[] baseColumns;
+    long treeSeed;
+
+    TreeTask(ColumnarTable<T> data, int[] baseRows, int[] baseColumns, long treeSeed) {
+      this.data = data;
+      this.baseRows = baseRows;
+      this.baseColumns = baseColumns;
+      this.treeSeed = treeSeed;
+    }
+
+    protected CompiledTree<T> compute() {
+      Random random = new Random(treeSeed);
+      int[] sampleRows = new int[baseRows.length];
+      for (int i = 0; i < sampleRows.length; i++) {
+        sampleRows[i] = baseRows[random.nextInt(baseRows.length)];
+      }
+
+      // Shuffle the first attributes into place, then keep them in table order
+      int[] columns = baseColumns.clone();
+      int count = attributesPerTree(columns.length);
+      for (int i = 0; i < count; i++) {
+        int j = i + random.nextInt(columns.length - i);
+        int swap = columns[i];
+        columns[i] = columns[j];
+        columns[j] = swap;
+      }
+      int[] sampleColumns = Arrays.copyOf(columns, count);
+      Arrays.sort(sampleColumns);
+
+      TreeNode<T> root = new TreeNode<T>();
+      treeBuilder.build(root, data.sample(sampleRows, sampleColumns));
+      return CompiledTree.fromTree(root);
+    }
+  }
+
+  public void setTreeCount(int treeCount) {
+    this.treeCount = treeCount;
+  }
+
+  // Sets the number of attributes each tree may split on, or 0 for the square root of the total
+  public void setAttributesPerTree(int attributesPerTree) {
+    this.attributesPerTree = attributesPerTree;
+  }
+
+  // Sets the seed of the first tree; tree i uses seed + i
+  public void setSeed(long seed) {
+    this.seed = seed;
+  }
+
+  /**
+   * Sets the builder used for each tree, for its numeric split and
+   * histogram settings. It should not have a pool of its own.
+   */
+  public void setTreeBuilder(TreeBuilder<T> treeBuilder) {
+    this.treeBuilder = treeBuilder;
+  }
+
+  /**
+   * Sets the number of threads used to build forests. A parallelism of 1
+   * builds on the calling thread.
+   */
+  public void setParallelism(int parallelism) {
+    close();
+    pool = (parallelism > 1) ? new ForkJoinPool(parallelism) : null;
+    ownsPool = (pool != null);
+  }
+
+  // Builds forests on a shared pool, or sequentially if pool is null
+  public void setPool(ForkJoinPool pool) {
+    close();
+    this.pool = pool;
+  }
+
+  /**
+   * Shuts down the pool made by setParallelism, if any, and goes back to
+   * running sequentially. A pool given to setPool is left running.
+   */
+  @Override
+  public void close() {
+    if (ownsPool) {
+      pool.shutdown();
+      pool = null;
+      ownsPool = false;
+    }
+  }
+}
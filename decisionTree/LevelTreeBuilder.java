@@ -0,0 +1,502 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds decision trees from CSV files too large to load, keeping the rows
+ * on disk and growing the tree one level at a time.
+ *
+ * A first pass over the file builds the dictionary of each column. Every
+ * later pass streams the rows again, routes each row down the tree built
+ * so far to the frontier node it reaches, and adds it to that node's
+ * counts: how many of its rows have each pair of attribute value and target
+ * value, for every attribute the node may split on. At the end of a pass
+ * each frontier node is expanded from its counts exactly as TreeBuilder
+ * expands it from its rows, so both give the same tree for the same
+ * settings. A pass expands a whole level, or the next maxNodesPerPass nodes
+ * of it, so memory depends on the number of frontier nodes and distinct
+ * values, not on the number of rows.
+ *
+ * The file must not change between passes and must have fewer than 2^31
+ * rows. Only the size and modification time of the file are checked.
+ */
+public class LevelTreeBuilder {
+  int maxNodesPerPass;
+  boolean numericSplits;
+  // Number of passes over the file made by the last build
+  int passCount;
+
+  public LevelTreeBuilder() {
+    this.maxNodesPerPass = Integer.MAX_VALUE;
+  }
+
+  /**
+   * returns the root of a tree built from the CSV file, with the column
+   * targetColumn (from 0) as the target and every other column as an
+   * attribute, as CsvLoader reads it
+   */
+  public TreeNode<String> build(String fileName, int targetColumn) throws IOException {
+    Path path = Paths.get(fileName);
+    long size = Files.size(path);
+    long modified = Files.getLastModifiedTime(path).toMillis();
+
+    // The first pass numbers each column's values in the order they first appear
+    String[] names;
+    CsvLoader.ColumnParser[] parsers;
+    try (RowScanner scanner = new RowScanner(fileName, null)) {
+      names = scanner.names;
+      parsers = scanner.parsers;
+      if (targetColumn < 0 || targetColumn >= names.length) {
+        throw new IOException("No column " + targetColumn + " in " + fileName);
+      }
+      while (scanner.nextRow()) {
+      }
+    }
+    passCount = 1;
+    Levels levels = new Levels(names, parsers, targetColumn);
+
+    ArrayDeque<Node> frontier = new ArrayDeque<Node>();
+    frontier.add(levels.root);
+    while (!frontier.isEmpty()) {
+      if (Files.size(path) != size || Files.getLastModifiedTime(path).toMillis() != modified) {
+        throw new IOException("File changed while it was being read: " + fileName);
+      }
+      List<Node> batch = new ArrayList<Node>();
+      while (!frontier.isEmpty() && batch.size() < maxNodesPerPass) {
+        Node node = frontier.poll();
+        levels.startCounting(node);
+        batch.add(node);
+      }
+
+      try (RowScanner scanner = new RowScanner(fileName, parsers)) {
+        while (scanner.nextRow()) {
+          levels.count(scanner.codes, fileName);
+        }
+      }
+      passCount++;
+
+      for (Node node : batch) {
+        levels.expand(node);
+        for (Node child : node.children) {
+          frontier.add(child);
+        }
+      }
+    }
+    if (levels.root.tree.nodePrediction == null) {
+      throw new IOException("No rows in " + fileName);
+    }
+    return levels.root.tree;
+  }
+
+  // A node of the tree being built, with its counts while it is being expanded
+  static class Node {
+    TreeNode<String> tree;
+    // Base columns the node may split on
+    int[] columns;
+    // Base column the node splits on, or -1 for a leaf or a node not yet expanded
+    int splitColumn;
+    // Index in children of each code of the split column, or -1
+    int[] childOf;
+    Node[] children;
+
+    boolean counting;
+    int rowCount;
+    // For each of columns, the count of each pair of code and target code
+    int[][] contingency;
+    // For each of columns, the order in which each code first appeared, or -1
+    int[][] firstSeen;
+    int[] seenCount;
+    int[] targetCounts;
+    int[] targetFirstSeen;
+    int targetSeen;
+
+    Node(TreeNode<String> tree, int[] columns) {
+      this.tree = tree;
+      this.columns = columns;
+      this.splitColumn = -1;
+      this.children = new Node[0];
+    }
+  }
+
+  // The dictionaries of the file and the rules for counting and expanding nodes
+  class Levels {
+    String[] names;
+    int targetColumn;
+    ValueDictionary<String>[] dictionaries;
+    int ySize;
+    // For numeric columns, the rank of each code, and the codes sorted by rank
+    int[][] ranks;
+    int[][] byRank;
+    Node root;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    Levels(String[] names, CsvLoader.ColumnParser[] parsers, int targetColumn) {
+      this.names = names;
+      this.targetColumn = targetColumn;
+      this.dictionaries = new ValueDictionary[names.length];
+      this.ranks = new int[names.length][];
+      this.byRank = new int[names.length][];
+      for (int column = 0; column < names.length; column++) {
+        dictionaries[column] = new ValueDictionary<String>();
+        for (int code = 0; code < parsers[column].keyCount; code++) {
+          dictionaries[column].encode(new String(parsers[column].keys[code], StandardCharsets.UTF_8));
+        }
+        if (numericSplits && column != targetColumn) {
+          ranks[column] = ColumnarTable.rankValues(dictionaries[column]);
+          if (ranks[column] != null) {
+            byRank[column] = sortByRank(ranks[column]);
+          }
+        }
+      }
+      this.ySize = dictionaries[targetColumn].size();
+
+      int[] columns = new int[names.length - 1];
+      for (int column = 0, next = 0; column < names.length; column++) {
+        if (column != targetColumn) {
+          columns[next++] = column;
+        }
+      }
+      this.root = new Node(new TreeNode<String>(), columns);
+    }
+
+    // returns the codes sorted by rank, in code order within a rank
+    int[] sortByRank(int[] rank) {
+      int[] starts = new int[ColumnarTable.codesByRank(rank).length + 1];
+      for (int r : rank) {
+        starts[r + 1]++;
+      }
+      for (int r = 1; r < starts.length; r++) {
+        starts[r] += starts[r - 1];
+      }
+      int[] sorted = new int[rank.length];
+      for (int code = 0; code < rank.length; code++) {
+        sorted[starts[rank[code]]++] = code;
+      }
+      return sorted;
+    }
+
+    void startCounting(Node node) {
+      node.counting = true;
+      node.contingency = new int[node.columns.length][];
+      node.firstSeen = new int[node.columns.length][];
+      node.seenCount = new int[node.columns.length];
+      for (int i = 0; i < node.columns.length; i++) {
+        int xSize = dictionaries[node.columns[i]].size();
+        node.contingency[i] = new int[xSize * ySize];
+        node.firstSeen[i] = new int[xSize];
+        Arrays.fill(node.firstSeen[i], -1);
+      }
+      node.targetCounts = new int[ySize];
+      node.targetFirstSeen = new int[ySize];
+      Arrays.fill(node.targetFirstSeen, -1);
+    }
+
+    // Routes a row to its frontier node and adds it to the node's counts if it is being expanded
+    void count(int[] codes, String fileName) throws IOException {
+      for (int column = 0; column < codes.length; column++) {
+        if (codes[column] >= dictionaries[column].size()) {
+          throw new IOException("File changed while it was being read: " + fileName);
+        }
+      }
+      Node node = root;
+      while (node.splitColumn >= 0) {
+        int child = node.childOf[codes[node.splitColumn]];
+        if (child < 0) {
+          throw new IOException("File changed while it was being read: " + fileName);
+        }
+        node = node.children[child];
+      }
+      if (!node.counting) {
+        return;
+      }
+
+      int y = codes[targetColumn];
+      node.rowCount++;
+      node.targetCounts[y]++;
+      if (node.targetFirstSeen[y] < 0) {
+        node.targetFirstSeen[y] = node.targetSeen++;
+      }
+      for (int i = 0; i < node.columns.length; i++) {
+        int x = codes[node.columns[i]];
+        node.contingency[i][x * ySize + y]++;
+        if (node.firstSeen[i][x] < 0) {
+          node.firstSeen[i][x] = node.seenCount[i]++;
+        }
+      }
+    }
+
+    /**
+     * Sets the prediction of a counted node and, unless it is a leaf, adds
+     * its children as TreeBuilder.expand does, then drops its counts
+     */
+    void expand(Node node) {
+      node.counting = false;
+      if (node.rowCount > 0) {
+        node.tree.nodePrediction = dictionaries[targetColumn].valueOf(targetMajority(node));
+        if (node.columns.length > 0 && node.targetSeen > 1) {
+          split(node);
+        }
+      }
+      node.contingency = null;
+      node.firstSeen = null;
+      node.seenCount = null;
+      node.targetCounts = null;
+      node.targetFirstSeen = null;
+    }
+
+    // returns the most common target code, the one that appeared first on a tie
+    int targetMajority(Node node) {
+      int best = -1;
+      for (int y = 0; y < ySize; y++) {
+        if (node.targetCounts[y] > 0 &&
+            (best < 0 || node.targetCounts[y] > node.targetCounts[best] ||
+             (node.targetCounts[y] == node.targetCounts[best] &&
+              node.targetFirstSeen[y] < node.targetFirstSeen[best]))) {
+          best = y;
+        }
+      }
+      return best;
+    }
+
+    void split(Node node) {
+      double targetEntropy = ColumnarTable.entropyOf(node.targetCounts, 0, ySize, node.rowCount);
+      int best = -1;
+      double maxGain = Double.NEGATIVE_INFINITY;
+      int bestThreshold = -1;
+      int[] counts = new int[2 * ySize];
+      int[] threshold = new int[1];
+      for (int i = 0; i < node.columns.length; i++) {
+        int column = node.columns[i];
+        double gain;
+        if (ranks[column] != null) {
+          gain = thresholdGain(node, i, targetEntropy, counts, threshold);
+        } else {
+          gain = targetEntropy - ColumnarTable.conditionalEntropyOf(node.contingency[i],
+                                                                   dictionaries[column].size(),
+                                                                   ySize, node.rowCount);
+        }
+        if (gain > maxGain) {
+          best = i;
+          maxGain = gain;
+          bestThreshold = threshold[0];
+        }
+      }
+      // Numeric attributes whose rows all have one value cannot split the rows
+      if (best < 0) {
+        return;
+      }
+
+      int column = node.columns[best];
+      String attributeName = names[column];
+      int attributeIndex = (column < targetColumn) ? column : column - 1;
+      node.splitColumn = column;
+      node.childOf = new int[dictionaries[column].size()];
+
+      if (ranks[column] != null) {
+        String value = dictionaries[column].valueOf(ColumnarTable.codesByRank(ranks[column])[bestThreshold]);
+        double numericThreshold = ColumnarTable.numericValue(value);
+        node.children = new Node[] {
+          new Node(new TreeNode<String>(attributeName, attributeIndex, value, TreeNode.AT_MOST,
+                                        numericThreshold), node.columns),
+          new Node(new TreeNode<String>(attributeName, attributeIndex, value, TreeNode.ABOVE,
+                                        numericThreshold), node.columns)
+        };
+        for (int code = 0; code < node.childOf.length; code++) {
+          node.childOf[code] = (ranks[column][code] <= bestThreshold) ? 0 : 1;
+        }
+      } else {
+        int[] childColumns = new int[node.columns.length - 1];
+        System.arraycopy(node.columns, 0, childColumns, 0, best);
+        System.arraycopy(node.columns, best + 1, childColumns, best, childColumns.length - best);
+
+        // Children come in the order their values first appeared in the node's rows
+        node.children = new Node[node.seenCount[best]];
+        for (int code = 0; code < node.childOf.length; code++) {
+          int child = node.firstSeen[best][code];
+          node.childOf[code] = child;
+          if (child >= 0) {
+            node.children[child] = new Node(new TreeNode<String>(attributeName, attributeIndex,
+                                                                 dictionaries[column].valueOf(code)),
+                                            childColumns);
+          }
+        }
+      }
+      for (Node child : node.children) {
+        node.tree.children.add(child.tree);
+      }
+    }
+
+    /**
+     * The information gain of the best binary split of a numeric column,
+     * found by sweeping the node's counts in value order as
+     * ColumnarTable.thresholdGain sweeps its rows. The rank of the first
+     * best threshold is stored in threshold[0].
+     */
+    double thresholdGain(Node node, int i, double targetEntropy, int[] counts, int[] threshold) {
+      int column = node.columns[i];
+      int[] contingency = node.contingency[i];
+      int[] rank = ranks[column];
+      int[] sorted = byRank[column];
+      int total = node.rowCount;
+      Arrays.fill(counts, 0);
+      System.arraycopy(node.targetCounts, 0, counts, ySize, ySize);
+
+      double maxGain = Double.NEGATIVE_INFINITY;
+      int left = 0;
+      boolean present = false;
+      for (int j = 0; j < sorted.length; j++) {
+        int code = sorted[j];
+        for (int y = 0; y < ySize; y++) {
+          int count = contingency[code * ySize + y];
+          counts[y] += count;
+          counts[ySize + y] -= count;
+          left += count;
+        }
+        present |= node.firstSeen[i][code] >= 0;
+        // Score the boundary after each rank the node has rows of, if rows remain on the right
+        if (j + 1 < sorted.length && rank[sorted[j + 1]] == rank[code]) {
+          continue;
+        }
+        if (present && left < total) {
+          double entropy = (double) left / total * ColumnarTable.entropyOf(counts, 0, ySize, left) +
+                           (double) (total - left) / total * ColumnarTable.entropyOf(counts, ySize, 2 * ySize, total - left);
+          double gain = targetEntropy - entropy;
+          if (gain > maxGain) {
+            maxGain = gain;
+            threshold[0] = rank[code];
+          }
+        }
+        present = false;
+      }
+      return maxGain;
+    }
+  }
+
+  /**
+   * Streams the rows of a CSV file, a mapped chunk at a time, turning each
+   * field into its code in the column's dictionary. Given no dictionaries,
+   * it starts new ones and numbers the values in the order they first
+   * appear.
+   */
+  static class RowScanner implements Closeable {
+    String fileName;
+    FileChannel channel;
+    String[] names;
+    CsvLoader.ColumnParser[] parsers;
+    long[] bounds;
+    int chunk;
+    MappedByteBuffer buffer;
+    int position;
+    // Codes of each field of the last row read
+    int[] codes;
+
+    RowScanner(String fileName, CsvLoader.ColumnParser[] parsers) throws IOException {
+      this.fileName = fileName;
+      this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+      try {
+        long[] end = new long[1];
+        this.names = CsvLoader.readHeader(channel, fileName, end);
+        if (parsers == null) {
+          parsers = new CsvLoader.ColumnParser[names.length];
+          for (int column = 0; column < parsers.length; column++) {
+            parsers[column] = new CsvLoader.ColumnParser();
+          }
+        }
+        this.parsers = parsers;
+        // Without a pool the chunks are as large as a mapping allows
+        this.bounds = new CsvLoader().chunkBounds(channel, end[0], channel.size());
+      } catch (IOException e) {
+        channel.close();
+        throw e;
+      }
+      this.chunk = -1;
+      this.codes = new int[parsers.length];
+    }
+
+    // Reads the next row into codes, returning false at the end of the file
+    boolean nextRow() throws IOException {
+      while (true) {
+        if (buffer == null || position >= buffer.limit()) {
+          if (chunk + 2 >= bounds.length) {
+            return false;
+          }
+          chunk++;
+          buffer = channel.map(FileChannel.MapMode.READ_ONLY, bounds[chunk],
+                               bounds[chunk + 1] - bounds[chunk]);
+          position = 0;
+          continue;
+        }
+        byte b = buffer.get(position);
+        if (b == '\n' || b == '\r') {
+          position++;
+          continue;
+        }
+
+        int limit = buffer.limit();
+        int lineStart = position;
+        int field = 0;
+        int fieldStart = position;
+        while (true) {
+          b = (position < limit) ? buffer.get(position) : (byte) '\n';
+          if (b == ',' || b == '\n' || b == '\r') {
+            if (field < codes.length) {
+              int fieldEnd = position;
+              // A lone ? is a missing value, which is read as the empty value
+              if (fieldEnd - fieldStart == 1 && buffer.get(fieldStart) == '?') {
+                fieldEnd = fieldStart;
+              }
+              codes[field] = parsers[field].codeOf(buffer, fieldStart, fieldEnd);
+            }
+            field++;
+            fieldStart = position + 1;
+          }
+          position++;
+          if (b == '\n' || b == '\r') {
+            break;
+          }
+        }
+        if (field < codes.length) {
+          throw new IOException("Expected at least " + codes.length + " fields on the line at byte " +
+                                (bounds[chunk] + lineStart) + " of " + fileName);
+        }
+        return true;
+      }
+    }
+
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+
+  /**
+   * Expands at most this many frontier nodes per pass over the file, to
+   * bound the memory taken by their counts. By default a pass expands a
+   * whole level.
+   */
+  public void setMaxNodesPerPass(int maxNodesPerPass) {
+    this.maxNodesPerPass = maxNodesPerPass;
+  }
+
+  /**
+   * Splits columns whose values are all numbers at thresholds instead of
+   * by value, as TreeBuilder.setNumericSplits does
+   */
+  public void setNumericSplits(boolean numericSplits) {
+    this.numericSplits = numericSplits;
+  }
+
+  // returns the number of passes over the file made by the last build
+  public int passCount() {
+    return passCount;
+  }
+}
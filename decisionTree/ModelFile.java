@@ -0,0 +1,203 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Saves and loads compiled decision trees.
+ *
+ * A model file holds the arrays of a CompiledTree as little-endian ints: a
+ * header of magic, version, node int count, node count, column count and
+ * class count, followed by the node records and the dictionary size of each
+ * column. Since version 2, the number of thresholds of each column (-1 for
+ * a column split by value) and the thresholds themselves, as doubles,
+ * come next. Then come the strings, each an int byte length followed by its
+ * UTF-8 bytes: the column names, the values of each column in code order,
+ * and the classes in code order.
+ *
+ * Loading memory maps the file and reads it in one pass, copying the node
+ * records with a single bulk get, so a scoring process can start from a
+ * model file without retraining, and processes loading the same file share
+ * its pages.
+ */
+public class ModelFile {
+  static final int MAGIC = 0x44544D31;  // "DTM1"
+  static final int VERSION = 2;
+  static final int HEADER_BYTES = 24;
+  static final int BUFFER_BYTES = 1 << 16;
+
+  public static void write(CompiledTree<String> tree, String fileName) throws IOException {
+    try (FileChannel channel = FileChannel.open(Paths.get(fileName),
+                                                StandardOpenOption.CREATE,
+                                                StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+      buffer.putInt(MAGIC);
+      buffer.putInt(VERSION);
+      buffer.putInt(tree.nodes.length);
+      buffer.putInt(tree.nodeCount);
+      buffer.putInt(tree.columnCount());
+      buffer.putInt(tree.getClasses().size());
+
+      for (int value : tree.nodes) {
+        putInt(channel, buffer, value);
+      }
+      for (int column = 0; column < tree.columnCount(); column++) {
+        putInt(channel, buffer, tree.getDictionary(column).size());
+      }
+      for (int column = 0; column < tree.columnCount(); column++) {
+        double[] thresholds = tree.getThresholds(column);
+        putInt(channel, buffer, (thresholds == null) ? -1 : thresholds.length);
+      }
+      for (int column = 0; column < tree.columnCount(); column++) {
+        if (tree.getThresholds(column) != null) {
+          for (double threshold : tree.getThresholds(column)) {
+            long bits = Double.doubleToLongBits(threshold);
+            putInt(channel, buffer, (int) bits);
+            putInt(channel, buffer, (int) (bits >>> 32));
+          }
+        }
+      }
+
+      for (int column = 0; column < tree.columnCount(); column++) {
+        putString(channel, buffer, tree.getName(column));
+      }
+      for (int column = 0; column < tree.columnCount(); column++) {
+        ValueDictionary<String> dictionary = tree.getDictionary(column);
+        for (int code = 0; code < dictionary.size(); code++) {
+          putString(channel, buffer, dictionary.valueOf(code));
+        }
+      }
+      for (int code = 0; code < tree.getClasses().size(); code++) {
+        putString(channel, buffer, tree.getClasses().valueOf(code));
+      }
+
+      flush(channel, buffer);
+    }
+  }
+
+  // Appends a value to the buffer, writing the buffer out first if it is full
+  static void putInt(FileChannel channel, ByteBuffer buffer, int value)
+      throws IOException {
+    if (buffer.remaining() < Integer.BYTES) {
+      flush(channel, buffer);
+    }
+    buffer.putInt(value);
+  }
+
+  static void putString(FileChannel channel, ByteBuffer buffer, String value)
+      throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    putInt(channel, buffer, bytes.length);
+    int written = 0;
+    while (written < bytes.length) {
+      if (!buffer.hasRemaining()) {
+        flush(channel, buffer);
+      }
+      int length = Math.min(buffer.remaining(), bytes.length - written);
+      buffer.put(bytes, written, length);
+      written += length;
+    }
+  }
+
+  static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public static CompiledTree<String> read(String fileName) throws IOException {
+    try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+      if (channel.size() < HEADER_BYTES) {
+        throw new IOException("Not a model file: " + fileName);
+      }
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Model file is too large to map: " + fileName);
+      }
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+      if (buffer.getInt() != MAGIC) {
+        throw new IOException("Not a model file: " + fileName);
+      }
+      int version = buffer.getInt();
+      if (version != 1 && version != VERSION) {
+        throw new IOException("Unsupported model version " + version + " in " + fileName);
+      }
+      int nodeInts = buffer.getInt();
+      int nodeCount = buffer.getInt();
+      int columnCount = buffer.getInt();
+      int classCount = buffer.getInt();
+      if (nodeInts < 0 || columnCount < 0 || classCount < 0 ||
+          4L * (nodeInts + columnCount) > buffer.remaining()) {
+        throw new IOException("Truncated model file: " + fileName);
+      }
+
+      int[] nodes = new int[nodeInts];
+      buffer.asIntBuffer().get(nodes);
+      buffer.position(buffer.position() + 4 * nodeInts);
+      int[] dictionarySizes = new int[columnCount];
+      buffer.asIntBuffer().get(dictionarySizes);
+      buffer.position(buffer.position() + 4 * columnCount);
+
+      // Version 1 files only hold trees split by value
+      double[][] thresholds = new double[columnCount][];
+      if (version >= 2) {
+        if (4L * columnCount > buffer.remaining()) {
+          throw new IOException("Truncated model file: " + fileName);
+        }
+        int[] thresholdCounts = new int[columnCount];
+        buffer.asIntBuffer().get(thresholdCounts);
+        buffer.position(buffer.position() + 4 * columnCount);
+        for (int column = 0; column < columnCount; column++) {
+          if (thresholdCounts[column] >= 0) {
+            if (8L * thresholdCounts[column] > buffer.remaining()) {
+              throw new IOException("Truncated model file: " + fileName);
+            }
+            thresholds[column] = new double[thresholdCounts[column]];
+            buffer.asDoubleBuffer().get(thresholds[column]);
+            buffer.position(buffer.position() + 8 * thresholdCounts[column]);
+          }
+        }
+      }
+
+      String[] names = new String[columnCount];
+      for (int column = 0; column < columnCount; column++) {
+        names[column] = getString(buffer, fileName);
+      }
+      ValueDictionary<String>[] dictionaries = new ValueDictionary[columnCount];
+      for (int column = 0; column < columnCount; column++) {
+        dictionaries[column] = new ValueDictionary<String>();
+        for (int code = 0; code < dictionarySizes[column]; code++) {
+          dictionaries[column].encode(getString(buffer, fileName));
+        }
+      }
+      ValueDictionary<String> classes = new ValueDictionary<String>();
+      for (int code = 0; code < classCount; code++) {
+        classes.encode(getString(buffer, fileName));
+      }
+
+      return new CompiledTree<String>(nodes, nodeCount, names, dictionaries, thresholds, classes);
+    }
+  }
+
+  private static String getString(ByteBuffer buffer, String fileName) throws IOException {
+    if (buffer.remaining() < Integer.BYTES) {
+      throw new IOException("Truncated model file: " + fileName);
+    }
+    int length = buffer.getInt();
+    if (length < 0 || length > buffer.remaining()) {
+      throw new IOException("Truncated model file: " + fileName);
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,526 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An embedded HTTP service that scores rows with a compiled tree, for
+ * serving predictions to other processes on the same machine. It listens
+ * on the loopback address only.
+ *
+ * POST /predict takes one row per line, the attribute values separated by
+ * commas in the order of the training table's attributes (? for a missing
+ * value), and answers with the predicted class of each row, one per line.
+ * GET /stats answers with the counters, one "name value" pair per line.
+ *
+ * The model is an immutable Snapshot held in an AtomicReference, so
+ * setModel swaps in a new tree atomically while the service runs. Requests
+ * are not scored on the threads that receive them: a handler thread only
+ * parses a request's rows and queues them with its exchange, then returns
+ * to take the next request. A single batching thread takes every request
+ * waiting, up to maxBatchRows rows (waiting up to maxDelayMicros for more
+ * after the first), scores their rows in one BatchPredictor pass with the
+ * snapshot current at that moment, and hands the answers to a pool of
+ * responder threads to send. No thread waits on a request, so a batch can
+ * hold as many requests as there are open connections. Every row of a
+ * request is scored by the same snapshot. A batch that fails to score is
+ * answered with 500, and a request left unanswered for requestTimeoutMillis,
+ * as when the batching thread has died, is answered with 503.
+ *
+ * The service counts requests, rows and batches, and keeps a histogram of
+ * request latencies, from the arrival of a request's rows to its answer,
+ * for percentiles. Latencies are bucketed with 16 buckets per power of two,
+ * so percentiles are within about 6% of the exact values.
+ */
+public class PredictionServer {
+  // Buckets below this many microseconds hold a single microsecond each
+  static final int EXACT_MICROS = 16;
+  static final int HISTOGRAM_BUCKETS = 60 * EXACT_MICROS;
+
+  AtomicReference<Snapshot> model;
+  AtomicLong nextVersion;
+  int port;
+  int handlerThreads;
+  int maxBatchRows;
+  long maxDelayMicros;
+  long requestTimeoutMillis;
+
+  HttpServer server;
+  ExecutorService handlers;
+  ScheduledThreadPoolExecutor responders;
+  Thread batcher;
+  LinkedBlockingQueue<Request> queue;
+  volatile boolean running;
+
+  long startNanos;
+  AtomicLong requestCount;
+  AtomicLong rowCount;
+  AtomicLong batchCount;
+  AtomicLongArray latencies;
+
+  public PredictionServer(CompiledTree<String> tree) {
+    this.nextVersion = new AtomicLong(1);
+    this.model = new AtomicReference<Snapshot>(new Snapshot(tree, nextVersion.getAndIncrement()));
+    this.handlerThreads = 8;
+    this.maxBatchRows = 1024;
+    this.requestTimeoutMillis = 10000;
+    this.queue = new LinkedBlockingQueue<Request>();
+    this.requestCount = new AtomicLong();
+    this.rowCount = new AtomicLong();
+    this.batchCount = new AtomicLong();
+    this.latencies = new AtomicLongArray(HISTOGRAM_BUCKETS);
+  }
+
+  // Serves the model file on the given port of the loopback address, 0 for any free port
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("Usage: PredictionServer <model file> [port]");
+      System.exit(1);
+    }
+    PredictionServer server = new PredictionServer(ModelFile.read(args[0]));
+    server.setPort((args.length > 1) ? Integer.parseInt(args[1]) : 0);
+    server.start();
+    System.out.println("Serving " + args[0] + " at http://" +
+                       server.server.getAddress().getHostString() + ":" + server.getPort() + "/predict");
+  }
+
+  /**
+   * A model as served: the compiled tree, the predictor for it, and the
+   * version it was given when it was swapped in. Nothing in a snapshot
+   * changes once it is made.
+   */
+  static final class Snapshot {
+    final CompiledTree<String> tree;
+    final BatchPredictor<String> predictor;
+    final long version;
+
+    Snapshot(CompiledTree<String> tree, long version) {
+      this.tree = tree;
+      this.predictor = new BatchPredictor<String>(tree);
+      this.version = version;
+    }
+  }
+
+  // The rows of one request and the exchange to answer it through, exactly once
+  static class Request {
+    HttpExchange exchange;
+    List<String[]> rows;
+    long arrivalNanos;
+    String[] predictions;
+    String error;
+    AtomicBoolean answered;
+    // Answers the request with 503 if nothing else has by then
+    ScheduledFuture<?> timeout;
+
+    Request(HttpExchange exchange, List<String[]> rows) {
+      this.exchange = exchange;
+      this.rows = rows;
+      this.arrivalNanos = System.nanoTime();
+      this.answered = new AtomicBoolean();
+    }
+  }
+
+  // Binds the listener and starts the batching thread
+  public void start() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    handlers = Executors.newFixedThreadPool(handlerThreads);
+    responders = new ScheduledThreadPoolExecutor(handlerThreads);
+    responders.setRemoveOnCancelPolicy(true);
+    server.setExecutor(handlers);
+    server.createContext("/predict", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        handlePredict(exchange);
+      }
+    });
+    server.createContext("/stats", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("GET")) {
+          respond(exchange, 405, "Use GET\n");
+          return;
+        }
+        respond(exchange, 200, stats());
+      }
+    });
+
+    running = true;
+    startNanos = System.nanoTime();
+    batcher = new Thread(new Runnable() {
+      public void run() {
+        batchLoop();
+      }
+    }, "prediction-batcher");
+    batcher.setDaemon(true);
+    batcher.start();
+    server.start();
+  }
+
+  // Stops listening, answers any queued requests with an error and stops the threads
+  public void stop() {
+    running = false;
+    if (server != null) {
+      server.stop(0);
+    }
+    if (batcher != null) {
+      batcher.interrupt();
+      try {
+        batcher.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    if (handlers != null) {
+      handlers.shutdown();
+    }
+    if (responders != null) {
+      responders.shutdown();
+    }
+  }
+
+  void handlePredict(HttpExchange exchange) throws IOException {
+    if (!exchange.getRequestMethod().equals("POST")) {
+      respond(exchange, 405, "Use POST\n");
+      return;
+    }
+    String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+    List<String[]> rows = new ArrayList<String[]>();
+    for (String line : body.split("\r?\n|\r")) {
+      if (line.isEmpty()) {
+        continue;
+      }
+      String[] values = line.split(",", -1);
+      for (int i = 0; i < values.length; i++) {
+        // A lone ? is a missing value, which is read as the empty value, as CsvLoader does
+        if (values[i].equals("?")) {
+          values[i] = "";
+        }
+      }
+      rows.add(values);
+    }
+    if (rows.isEmpty()) {
+      respond(exchange, 200, "");
+      return;
+    }
+
+    // The exchange stays open until the request is answered, by whichever thread scores it
+    final Request request = new Request(exchange, rows);
+    request.timeout = responders.schedule(new Runnable() {
+      public void run() {
+        queue.remove(request);
+        answer(request, 503, "No answer within " + requestTimeoutMillis + " ms\n");
+      }
+    }, requestTimeoutMillis, TimeUnit.MILLISECONDS);
+    queue.add(request);
+    // If the service stopped meanwhile, answer here unless the batching thread took the request
+    if (!running && queue.remove(request)) {
+      answer(request, 503, "Server is stopping\n");
+    }
+  }
+
+  /**
+   * Sends the answer to a request on a responder thread, unless it has
+   * been answered already, and counts it
+   */
+  void answer(final Request request, final int status, final String text) {
+    if (!request.answered.compareAndSet(false, true)) {
+      return;
+    }
+    if (request.timeout != null) {
+      request.timeout.cancel(false);
+    }
+    recordLatency(System.nanoTime() - request.arrivalNanos);
+    requestCount.incrementAndGet();
+    if (status == 200) {
+      rowCount.addAndGet(request.rows.size());
+    }
+    Runnable send = new Runnable() {
+      public void run() {
+        try {
+          respond(request.exchange, status, text);
+        } catch (IOException e) {
+          // The client went away; there is no one left to tell
+          request.exchange.close();
+        }
+      }
+    };
+    try {
+      responders.execute(send);
+    } catch (RejectedExecutionException e) {
+      // The responders have stopped, so answer on this thread
+      send.run();
+    }
+  }
+
+  // Answers a scored request with its predictions, or with its error
+  void answer(Request request) {
+    if (request.error != null) {
+      answer(request, 400, request.error + "\n");
+      return;
+    }
+    StringBuilder out = new StringBuilder();
+    for (String prediction : request.predictions) {
+      out.append(prediction).append('\n');
+    }
+    answer(request, 200, out.toString());
+  }
+
+  static void respond(HttpExchange exchange, int status, String text) throws IOException {
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    exchange.sendResponseHeaders(status, (bytes.length == 0) ? -1 : bytes.length);
+    try (OutputStream body = exchange.getResponseBody()) {
+      body.write(bytes);
+    }
+  }
+
+  // Takes the waiting requests off the queue in batches and scores them until stopped
+  void batchLoop() {
+    List<Request> batch = new ArrayList<Request>();
+    while (running) {
+      try {
+        Request first = queue.take();
+        batch.add(first);
+        int rows = first.rows.size();
+        long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+        while (rows < maxBatchRows) {
+          Request next = queue.poll();
+          if (next == null) {
+            long wait = deadline - System.nanoTime();
+            if (wait <= 0 || (next = queue.poll(wait, TimeUnit.NANOSECONDS)) == null) {
+              break;
+            }
+          }
+          batch.add(next);
+          rows += next.rows.size();
+        }
+      } catch (InterruptedException e) {
+        break;
+      }
+      try {
+        score(batch);
+      } catch (RuntimeException e) {
+        // Fail this batch's requests but keep serving later ones
+        for (Request request : batch) {
+          answer(request, 500, "Scoring failed: " + e + "\n");
+        }
+      }
+      batch.clear();
+    }
+
+    batch.addAll(queue);
+    queue.removeAll(batch);
+    for (Request request : batch) {
+      answer(request, 503, "Server is stopping\n");
+    }
+  }
+
+  /**
+   * Scores the rows of a batch of requests with the current snapshot,
+   * encoding them into one table for its BatchPredictor
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  void score(List<Request> batch) {
+    Snapshot snapshot = model.get();
+    int columnCount = snapshot.tree.columnCount();
+
+    List<Request> scored = new ArrayList<Request>();
+    int batchRows = 0;
+    for (Request request : batch) {
+      for (String[] row : request.rows) {
+        if (row.length < columnCount) {
+          request.error = "Expected at least " + columnCount + " values per row, got " + row.length;
+          break;
+        }
+      }
+      if (request.error == null) {
+        scored.add(request);
+        batchRows += request.rows.size();
+      }
+    }
+
+    String[] names = new String[columnCount];
+    ValueDictionary<String>[] dictionaries = new ValueDictionary[columnCount];
+    int[][] columns = new int[columnCount][batchRows];
+    for (int column = 0; column < columnCount; column++) {
+      names[column] = snapshot.tree.getName(column);
+      dictionaries[column] = new ValueDictionary<String>();
+      int row = 0;
+      for (Request request : scored) {
+        for (String[] values : request.rows) {
+          columns[column][row++] = dictionaries[column].encode(values[column]);
+        }
+      }
+    }
+    // The batch has no target, so every row gets the one empty target value
+    ValueDictionary<String> targetDictionary = new ValueDictionary<String>();
+    targetDictionary.encode("");
+    ColumnarTable<String> table = new ColumnarTable<String>(names, dictionaries, columns,
+                                                            targetDictionary, new int[batchRows]);
+    int[] predictions = new int[batchRows];
+    snapshot.predictor.predict(table, predictions);
+
+    int row = 0;
+    for (Request request : scored) {
+      request.predictions = new String[request.rows.size()];
+      for (int i = 0; i < request.predictions.length; i++) {
+        request.predictions[i] = snapshot.tree.getClasses().valueOf(predictions[row++]);
+      }
+    }
+    batchCount.incrementAndGet();
+    for (Request request : batch) {
+      answer(request);
+    }
+  }
+
+  void recordLatency(long nanos) {
+    latencies.incrementAndGet(bucketOf(TimeUnit.NANOSECONDS.toMicros(nanos)));
+  }
+
+  // returns the histogram bucket of a latency: 16 buckets for each power of two
+  static int bucketOf(long micros) {
+    if (micros < EXACT_MICROS) {
+      return (int) Math.max(0, micros);
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(micros);
+    int bucket = (exponent - 3) * EXACT_MICROS + (int) ((micros >>> (exponent - 4)) & (EXACT_MICROS - 1));
+    return Math.min(bucket, HISTOGRAM_BUCKETS - 1);
+  }
+
+  // returns the largest latency in a bucket, in microseconds
+  static long bucketLimit(int bucket) {
+    if (bucket < EXACT_MICROS) {
+      return bucket;
+    }
+    int exponent = bucket / EXACT_MICROS + 3;
+    long low = (long) (EXACT_MICROS + bucket % EXACT_MICROS) << (exponent - 4);
+    return low + (1L << (exponent - 4)) - 1;
+  }
+
+  /**
+   * returns the latency, in microseconds, that the given fraction of
+   * requests took at most, or 0 before any request
+   */
+  public long latencyPercentile(double fraction) {
+    long[] counts = new long[HISTOGRAM_BUCKETS];
+    long total = 0;
+    for (int bucket = 0; bucket < counts.length; bucket++) {
+      counts[bucket] = latencies.get(bucket);
+      total += counts[bucket];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(fraction * total));
+    long seen = 0;
+    for (int bucket = 0; bucket < counts.length; bucket++) {
+      seen += counts[bucket];
+      if (seen >= rank) {
+        return bucketLimit(bucket);
+      }
+    }
+    return bucketLimit(counts.length - 1);
+  }
+
+  // returns the number of rows scored per second since the service started
+  public double rowsPerSecond() {
+    double seconds = (System.nanoTime() - startNanos) / 1e9;
+    return (seconds > 0) ? rowCount.get() / seconds : 0.0;
+  }
+
+  // returns the counters as served by GET /stats
+  public String stats() {
+    double seconds = (System.nanoTime() - startNanos) / 1e9;
+    StringBuilder out = new StringBuilder();
+    out.append("model_version ").append(model.get().version).append('\n');
+    out.append("requests ").append(requestCount.get()).append('\n');
+    out.append("rows ").append(rowCount.get()).append('\n');
+    out.append("batches ").append(batchCount.get()).append('\n');
+    out.append("queued ").append(queue.size()).append('\n');
+    out.append("p50_micros ").append(latencyPercentile(0.50)).append('\n');
+    out.append("p99_micros ").append(latencyPercentile(0.99)).append('\n');
+    out.append("requests_per_second ").append((seconds > 0) ? requestCount.get() / seconds : 0.0).append('\n');
+    out.append("rows_per_second ").append(rowsPerSecond()).append('\n');
+    return out.toString();
+  }
+
+  /**
+   * Swaps in a new tree, returning the version it is served as. Batches
+   * already being scored finish with the tree they started with.
+   */
+  public long setModel(CompiledTree<String> tree) {
+    Snapshot snapshot = new Snapshot(tree, nextVersion.getAndIncrement());
+    model.set(snapshot);
+    return snapshot.version;
+  }
+
+  // Reads a model file and swaps it in, leaving the current model if the file cannot be read
+  public long loadModel(String fileName) throws IOException {
+    return setModel(ModelFile.read(fileName));
+  }
+
+  public long getModelVersion() {
+    return model.get().version;
+  }
+
+  public long getRequestCount() {
+    return requestCount.get();
+  }
+
+  public long getRowCount() {
+    return rowCount.get();
+  }
+
+  public long getBatchCount() {
+    return batchCount.get();
+  }
+
+  // returns the port the service listens on, once started
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  // Sets the loopback port to listen on, 0 (the default) for any free port
+  public void setPort(int port) {
+    this.port = port;
+  }
+
+  // Sets the number of threads that parse and queue requests, and of those that send answers
+  public void setHandlerThreads(int handlerThreads) {
+    this.handlerThreads = handlerThreads;
+  }
+
+  // Sets how long a request may wait for its answer before it is answered with 503
+  public void setRequestTimeoutMillis(long requestTimeoutMillis) {
+    this.requestTimeoutMillis = requestTimeoutMillis;
+  }
+
+  // Sets the number of rows after which a batch takes no more requests
+  public void setMaxBatchRows(int maxBatchRows) {
+    this.maxBatchRows = maxBatchRows;
+  }
+
+  /**
+   * Sets how long a batch waits for more requests after its first one. The
+   * default of 0 takes only the requests already waiting, which adds no
+   * latency when the service is idle and still batches under load.
+   */
+  public void setMaxDelayMicros(long maxDelayMicros) {
+    this.maxDelayMicros = maxDelayMicros;
+  }
+}
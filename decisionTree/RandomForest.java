@@ -0,0 +1,204 @@
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * An ensemble of compiled decision trees that predicts by majority vote,
+ * as trained by ForestBuilder.
+ *
+ * The classes of every tree are merged into one dictionary of classes, and
+ * ties between classes with the same number of votes go to the class that
+ * comes first in it. Whole tables are scored in chunks of rows: each chunk
+ * translates the table's codes with each tree's code maps (see
+ * BatchPredictor) and tallies the votes of every tree for its rows, so the
+ * votes take one small array per chunk. When given a ForkJoinPool (see
+ * setParallelism), chunks are scored across the pool.
+ *
+ * The columns of a scored table must be in the same order as the columns
+ * of the table the forest was trained on.
+ */
+public class RandomForest<T> implements AutoCloseable {
+  // Below this many rows a chunk is scored without splitting it further
+  static final int CHUNK_ROWS = 1 << 12;
+
+  List<CompiledTree<T>> trees;
+  ValueDictionary<String> classes;
+  // For each tree, the forest's code of each of the tree's classes
+  int[][] classOf;
+
+  // Pool for scoring chunks in parallel, or null to score sequentially
+  ForkJoinPool pool;
+  // Whether pool was made by setParallelism rather than given to setPool
+  boolean ownsPool;
+
+  public RandomForest(List<CompiledTree<T>> trees) {
+    this.trees = trees;
+    this.classes = new ValueDictionary<String>();
+    this.classOf = new int[trees.size()][];
+    for (int i = 0; i < trees.size(); i++) {
+      ValueDictionary<String> treeClasses = trees.get(i).getClasses();
+      classOf[i] = new int[treeClasses.size()];
+      for (int code = 0; code < classOf[i].length; code++) {
+        classOf[i][code] = classes.encode(treeClasses.valueOf(code));
+      }
+    }
+  }
+
+  // Predicts a single row, as TreeNode.predict does for one tree
+  public String predict(List<T> row) {
+    int[] votes = new int[classes.size()];
+    for (int i = 0; i < trees.size(); i++) {
+      CompiledTree<T> tree = trees.get(i);
+      votes[classOf[i][tree.predictCode(tree.encode(row, new int[tree.columnCount()]))]]++;
+    }
+    return classes.valueOf(majority(votes, 0));
+  }
+
+  // returns the class code the forest predicts for each row of the table
+  public int[] predict(DataTable<T> table) {
+    ColumnarTable<T> columnar = table.columnar();
+    int[] predictions = new int[columnar.rowCount()];
+    predict(columnar, predictions);
+    return predictions;
+  }
+
+  // Writes the class code the forest predicts for each row of the table into predictions
+  public void predict(ColumnarTable<T> table, int[] predictions) {
+    int[][][] codeMaps = new int[trees.size()][][];
+    for (int i = 0; i < trees.size(); i++) {
+      codeMaps[i] = new BatchPredictor<T>(trees.get(i)).codeMaps(table);
+    }
+    VoteTask task = new VoteTask(table, codeMaps, predictions, 0, table.rowCount());
+    if (pool != null) {
+      pool.invoke(task);
+    } else {
+      task.compute();
+    }
+  }
+
+  /**
+   * Predicts every row of the table into predictions and compares the
+   * predictions with the table's target column
+   */
+  public Evaluation evaluate(DataTable<T> table, String positiveClass, int[] predictions) {
+    ColumnarTable<T> columnar = table.columnar();
+    predict(columnar, predictions);
+
+    // Labels are the forest's classes, in the same order, then any new target values
+    ValueDictionary<String> labels = new ValueDictionary<String>();
+    for (int code = 0; code < classes.size(); code++) {
+      labels.encode(classes.valueOf(code));
+    }
+    int[] actualOf = new int[columnar.getTargetDictionary().size()];
+    for (int code = 0; code < actualOf.length; code++) {
+      actualOf[code] = labels.encode(columnar.getTargetDictionary().valueOf(code).toString());
+    }
+    int[][] confusion = new int[labels.size()][labels.size()];
+    for (int row = 0; row < predictions.length; row++) {
+      confusion[actualOf[columnar.getTargetCode(row)]][predictions[row]]++;
+    }
+    return new Evaluation(labels.values, confusion, positiveClass);
+  }
+
+  // returns the class with the most votes in votes[from .. from + classes), the first on a tie
+  int majority(int[] votes, int from) {
+    int best = 0;
+    for (int code = 1; code < classes.size(); code++) {
+      if (votes[from + code] > votes[from + best]) {
+        best = code;
+      }
+    }
+    return best;
+  }
+
+  // Scores the rows from fromRow to toRow, splitting large ranges across the pool
+  @SuppressWarnings("serial")
+  class VoteTask extends RecursiveAction {
+    ColumnarTable<T> table;
+    int[][][] codeMaps;
+    int[] predictions;
+    int fromRow, toRow;
+
+    VoteTask(ColumnarTable<T> table, int[][][] codeMaps, int[] predictions, int fromRow, int toRow) {
+      this.table = table;
+      this.codeMaps = codeMaps;
+      this.predictions = predictions;
+      this.fromRow = fromRow;
+      this.toRow = toRow;
+    }
+
+    protected void compute() {
+      if (pool == null || toRow - fromRow <= CHUNK_ROWS) {
+        for (int from = fromRow; from < toRow; from += CHUNK_ROWS) {
+          voteRows(from, Math.min(toRow, from + CHUNK_ROWS));
+        }
+        return;
+      }
+      int middle = (fromRow + toRow) >>> 1;
+      invokeAll(new VoteTask(table, codeMaps, predictions, fromRow, middle),
+                new VoteTask(table, codeMaps, predictions, middle, toRow));
+    }
+
+    // Tallies every tree's vote for each row of a chunk, one tree at a time
+    void voteRows(int from, int to) {
+      int classCount = classes.size();
+      int[] votes = new int[(to - from) * classCount];
+      for (int i = 0; i < trees.size(); i++) {
+        CompiledTree<T> tree = trees.get(i);
+        int[][] codeMap = codeMaps[i];
+        int[] codes = new int[codeMap.length];
+        for (int row = from; row < to; row++) {
+          for (int column = 0; column < codes.length; column++) {
+            codes[column] = codeMap[column][table.getCode(row, column)];
+          }
+          votes[(row - from) * classCount + classOf[i][tree.predictCode(codes)]]++;
+        }
+      }
+      for (int row = from; row < to; row++) {
+        predictions[row] = majority(votes, (row - from) * classCount);
+      }
+    }
+  }
+
+  public int treeCount() {
+    return trees.size();
+  }
+
+  public CompiledTree<T> getTree(int i) {
+    return trees.get(i);
+  }
+
+  // returns the dictionary of the predicted classes, which predict(ColumnarTable, int[]) returns codes of
+  public ValueDictionary<String> getClasses() {
+    return classes;
+  }
+
+  /**
+   * Sets the number of threads used to score tables. A parallelism of 1
+   * scores on the calling thread.
+   */
+  public void setParallelism(int parallelism) {
+    close();
+    pool = (parallelism > 1) ? new ForkJoinPool(parallelism) : null;
+    ownsPool = (pool != null);
+  }
+
+  // Scores tables on a shared pool, or sequentially if pool is null
+  public void setPool(ForkJoinPool pool) {
+    close();
+    this.pool = pool;
+  }
+
+  /**
+   * Shuts down the pool made by setParallelism, if any, and goes back to
+   * running sequentially. A pool given to setPool is left running.
+   */
+  @Override
+  public void close() {
+    if (ownsPool) {
+      pool.shutdown();
+      pool = null;
+      ownsPool = false;
+    }
+  }
+}
@@ -0,0 +1,282 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Caches parsed CSV files as binary columnar files, so training runs over
+ * the same data can skip parsing it.
+ *
+ * A table cache holds the EncodedColumns of a CSV file, every column in
+ * file order, so one cache serves any choice of target column. It starts
+ * with a header of little-endian ints: magic, version, column count and
+ * row count, then the size and last modified time (in milliseconds) of the
+ * CSV file as longs. Then come the dictionary size of each column, the
+ * strings, each an int byte length followed by its UTF-8 bytes (the column
+ * names, then the values of each column in code order), and finally the
+ * codes of each column. Codes are packed into 1, 2 or 4 bytes, the fewest
+ * that hold every code of the column's dictionary.
+ *
+ * Opening a cache memory maps it and copies the codes out of the mapping,
+ * so no text is parsed. open keeps the cache next to the CSV file, with
+ * CACHE_SUFFIX added to its name, and parses the CSV again and rewrites the
+ * cache whenever the CSV's size or modification time no longer matches the
+ * header, or the cache cannot be read. As with make, a change that keeps
+ * both the size and the modification time is not noticed.
+ */
+public class TableCache {
+  static final int MAGIC = 0x44544331;  // "DTC1"
+  static final int VERSION = 1;
+  static final int HEADER_BYTES = 32;
+  static final int BUFFER_BYTES = 1 << 16;
+  static final int MAP_BYTES = 1 << 30;
+  public static final String CACHE_SUFFIX = ".dtc";
+
+  /**
+   * Reads the CSV file through its cache, with the column targetColumn
+   * (from 0) as the target and every other column as an attribute
+   */
+  public static ColumnarTable<String> open(String csvFile, int targetColumn) throws IOException {
+    return open(csvFile, targetColumn, new CsvLoader());
+  }
+
+  // As open(csvFile, targetColumn), parsing with the given loader when the cache is stale
+  public static ColumnarTable<String> open(String csvFile, int targetColumn, CsvLoader loader)
+      throws IOException {
+    EncodedColumns<String> columns = openColumns(csvFile, loader);
+    if (targetColumn < 0 || targetColumn >= columns.columnCount()) {
+      throw new IOException("No column " + targetColumn + " in " + csvFile);
+    }
+    return columns.toTable(targetColumn);
+  }
+
+  /**
+   * returns every column of the CSV file, from its cache if the cache is
+   * current and otherwise by parsing the file and writing a new cache. If
+   * the cache cannot be written the parsed columns are still returned.
+   */
+  public static EncodedColumns<String> openColumns(String csvFile, CsvLoader loader)
+      throws IOException {
+    Path source = Paths.get(csvFile);
+    // Stamp the cache with the file as it was before parsing, so a change
+    // made while parsing makes the cache stale
+    long sourceSize = Files.size(source);
+    long sourceModified = Files.getLastModifiedTime(source).toMillis();
+    String cacheFile = csvFile + CACHE_SUFFIX;
+
+    if (isCurrent(cacheFile, sourceSize, sourceModified)) {
+      try {
+        return read(cacheFile);
+      } catch (IOException e) {
+        // A damaged cache is replaced below
+      }
+    }
+    EncodedColumns<String> columns = loader.readColumns(csvFile);
+    try {
+      write(columns, sourceSize, sourceModified, cacheFile);
+    } catch (IOException e) {
+      // The cache only saves parsing next time, so a directory that cannot
+      // hold it, read-only or full, does not fail the load. write has
+      // already removed its temporary file.
+    }
+    return columns;
+  }
+
+  // returns true if the cache exists and was written for a source of the given size and time
+  static boolean isCurrent(String cacheFile, long sourceSize, long sourceModified) {
+    Path path = Paths.get(cacheFile);
+    if (!Files.isRegularFile(path)) {
+      return false;
+    }
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+      while (header.hasRemaining()) {
+        if (channel.read(header) < 0) {
+          return false;
+        }
+      }
+      header.flip();
+      return header.getInt() == MAGIC &&
+             header.getInt() == VERSION &&
+             header.getLong(16) == sourceSize &&
+             header.getLong(24) == sourceModified;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Writes the columns to a table cache stamped with the size and time of
+   * their source. The cache is written to a temporary file and then moved
+   * into place, so a concurrent reader never sees a partial cache. The
+   * temporary file is deleted whether or not the write succeeds.
+   */
+  public static void write(EncodedColumns<String> columns, long sourceSize, long sourceModified,
+                           String fileName) throws IOException {
+    Path target = Paths.get(fileName).toAbsolutePath();
+    Path temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(temporary,
+                                                  StandardOpenOption.WRITE,
+                                                  StandardOpenOption.TRUNCATE_EXISTING)) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(columns.columnCount());
+        buffer.putInt(columns.rowCount());
+        buffer.putLong(sourceSize);
+        buffer.putLong(sourceModified);
+
+        for (int column = 0; column < columns.columnCount(); column++) {
+          ModelFile.putInt(channel, buffer, columns.getDictionary(column).size());
+        }
+        for (int column = 0; column < columns.columnCount(); column++) {
+          ModelFile.putString(channel, buffer, columns.getName(column));
+        }
+        for (int column = 0; column < columns.columnCount(); column++) {
+          ValueDictionary<String> dictionary = columns.getDictionary(column);
+          for (int code = 0; code < dictionary.size(); code++) {
+            ModelFile.putString(channel, buffer, dictionary.valueOf(code));
+          }
+        }
+
+        for (int column = 0; column < columns.columnCount(); column++) {
+          int width = codeWidth(columns.getDictionary(column).size());
+          for (int code : columns.columns[column]) {
+            if (buffer.remaining() < width) {
+              ModelFile.flush(channel, buffer);
+            }
+            if (width == 1) {
+              buffer.put((byte) code);
+            } else if (width == 2) {
+              buffer.putShort((short) code);
+            } else {
+              buffer.putInt(code);
+            }
+          }
+        }
+
+        ModelFile.flush(channel, buffer);
+      }
+      Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  // returns the number of bytes each code takes for a dictionary of the given size
+  static int codeWidth(int dictionarySize) {
+    if (dictionarySize <= 1 << 8) {
+      return 1;
+    }
+    return (dictionarySize <= 1 << 16) ? 2 : 4;
+  }
+
+  // Opens a table cache without checking it against its source
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public static EncodedColumns<String> read(String fileName) throws IOException {
+    try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+      long fileSize = channel.size();
+      if (fileSize < HEADER_BYTES) {
+        throw new IOException("Not a table cache: " + fileName);
+      }
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                            Math.min(fileSize, Integer.MAX_VALUE));
+      ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+      if (buffer.getInt() != MAGIC) {
+        throw new IOException("Not a table cache: " + fileName);
+      }
+      int version = buffer.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported table cache version " + version + " in " + fileName);
+      }
+      int columnCount = buffer.getInt();
+      int rowCount = buffer.getInt();
+      buffer.position(HEADER_BYTES);
+      if (columnCount < 0 || rowCount < 0 || 4L * columnCount > buffer.remaining()) {
+        throw new IOException("Truncated table cache: " + fileName);
+      }
+
+      int[] dictionarySizes = new int[columnCount];
+      buffer.asIntBuffer().get(dictionarySizes);
+      buffer.position(buffer.position() + 4 * columnCount);
+      String[] names = new String[columnCount];
+      for (int column = 0; column < columnCount; column++) {
+        names[column] = getString(buffer, fileName);
+      }
+      ValueDictionary<String>[] dictionaries = new ValueDictionary[columnCount];
+      for (int column = 0; column < columnCount; column++) {
+        dictionaries[column] = new ValueDictionary<String>();
+        for (int code = 0; code < dictionarySizes[column]; code++) {
+          dictionaries[column].encode(getString(buffer, fileName));
+        }
+      }
+
+      long position = buffer.position();
+      long codeBytes = 0;
+      for (int column = 0; column < columnCount; column++) {
+        codeBytes += (long) codeWidth(dictionarySizes[column]) * rowCount;
+      }
+      if (position + codeBytes > fileSize) {
+        throw new IOException("Truncated table cache: " + fileName);
+      }
+
+      int[][] columns = new int[columnCount][];
+      for (int column = 0; column < columnCount; column++) {
+        int width = codeWidth(dictionarySizes[column]);
+        columns[column] = new int[rowCount];
+        unpack(channel, position, width, columns[column]);
+        position += (long) width * rowCount;
+      }
+      return new EncodedColumns<String>(names, dictionaries, columns, rowCount);
+    }
+  }
+
+  /**
+   * Copies the packed codes starting at the given byte position into codes,
+   * mapping the section in slices of at most MAP_BYTES
+   */
+  static void unpack(FileChannel channel, long position, int width, int[] codes)
+      throws IOException {
+    int sliceRows = MAP_BYTES / width;
+    for (int from = 0; from < codes.length; from += sliceRows) {
+      int count = Math.min(sliceRows, codes.length - from);
+      ByteBuffer slice = channel.map(FileChannel.MapMode.READ_ONLY,
+                                     position + (long) width * from,
+                                     (long) width * count)
+                                .order(ByteOrder.LITTLE_ENDIAN);
+      if (width == 1) {
+        for (int i = 0; i < count; i++) {
+          codes[from + i] = slice.get(i) & 0xff;
+        }
+      } else if (width == 2) {
+        for (int i = 0; i < count; i++) {
+          codes[from + i] = slice.getShort(2 * i) & 0xffff;
+        }
+      } else {
+        slice.asIntBuffer().get(codes, from, count);
+      }
+    }
+  }
+
+  private static String getString(ByteBuffer buffer, String fileName) throws IOException {
+    if (buffer.remaining() < Integer.BYTES) {
+      throw new IOException("Truncated table cache: " + fileName);
+    }
+    int length = buffer.getInt();
+    if (length < 0 || length > buffer.remaining()) {
+      throw new IOException("Truncated table cache: " + fileName);
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,354 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Builds ID3 decision trees from the dictionary-encoded form of a DataTable.
+ *
+ * When given a ForkJoinPool (see setParallelism), the subtree of each child
+ * is built as its own fork-join task, and nodes with many rows score their
+ * candidate attributes concurrently. Subtrees with fewer than
+ * sequentialCutoff rows are built on the thread that reaches them. Children
+ * are added in the same order in both modes and attributes are chosen with
+ * the same comparison, so the parallel build gives exactly the tree the
+ * sequential one does.
+ *
+ * With setNumericSplits, columns whose values are all numbers are split in
+ * two at the threshold of maximum information gain, C4.5 style, instead of
+ * into a branch per value. Such a column stays available below the split,
+ * so it can be split again at another threshold. Missing values count as
+ * less than every number.
+ *
+ * With setHistogramBins, numeric columns are also split at thresholds, but
+ * only at the boundaries of a bounded number of bins, and every split is
+ * scored from per-bin target counts rather than from the rows (see
+ * ColumnarTable.binColumns). This trades a little accuracy for much less
+ * work per node on very large tables.
+ *
+ * Growth can be bounded by a maximum depth, a minimum number of rows to
+ * split a node, a minimum information gain for a split, and a maximum
+ * number of nodes. A node that any of these stops becomes a leaf with its
+ * majority prediction. With a node budget the tree is grown best first,
+ * always expanding the waiting node with the most rows, so the budget is
+ * spent where most of the data is and the tree does not depend on thread
+ * scheduling; nodes are then scored in parallel but expanded one at a
+ * time. TreePruner can prune a grown tree further against held-out rows.
+ */
+public class TreeBuilder<T> implements AutoCloseable {
+  // Below this many rows times columns a node's attributes are scored on the calling thread
+  static final int PARALLEL_SCORING_THRESHOLD = 1 << 15;
+
+  int sequentialCutoff;
+  boolean numericSplits;
+  int histogramBins;
+  int maxDepth;
+  int minRows;
+  double minGain;
+  int maxNodes;
+
+  // Pool for parallel builds, or null to build sequentially
+  ForkJoinPool pool;
+  // Whether pool was made by setParallelism rather than given to setPool
+  boolean ownsPool;
+
+  public TreeBuilder() {
+    this.sequentialCutoff = 1024;
+    this.maxDepth = Integer.MAX_VALUE;
+    this.maxNodes = Integer.MAX_VALUE;
+  }
+
+  // returns the root of a tree built from the table
+  public TreeNode<T> build(DataTable<T> data) {
+    TreeNode<T> root = new TreeNode<T>();
+    // Splitting reorders the view's rows, so build from a view of our own
+    build(root, data.columnar().baseView());
+    return root;
+  }
+
+  /**
+   * Builds the tree below node from the rows of data. With histogram bins
+   * or numeric splits, data is binned or presorted first if it has not been.
+   */
+  public void build(TreeNode<T> node, ColumnarTable<T> data) {
+    if (histogramBins > 0) {
+      data.binColumns(histogramBins);
+    } else if (numericSplits) {
+      data.presortNumericColumns();
+    }
+    if (maxNodes < Integer.MAX_VALUE) {
+      if (pool != null) {
+        pool.invoke(new RecursiveAction() {
+          protected void compute() {
+            buildBestFirst(node, data, true);
+          }
+        });
+      } else {
+        buildBestFirst(node, data, false);
+      }
+    } else if (pool != null) {
+      pool.invoke(new BuildTask(node, data, 0));
+    } else {
+      buildSequential(node, data, 0);
+    }
+  }
+
+  void buildSequential(TreeNode<T> node, ColumnarTable<T> data, int depth) {
+    ColumnarTable<T>[] childData = expand(node, data, false, depth, Integer.MAX_VALUE);
+    for (int i = 0; i < childData.length; i++) {
+      buildSequential(node.children.get(i), childData[i], depth + 1);
+      // Let the child's view, and any histograms it holds, go once its subtree is built
+      childData[i] = null;
+    }
+  }
+
+  // A node waiting to be expanded by buildBestFirst, in the order nodes were added
+  class Pending {
+    TreeNode<T> node;
+    ColumnarTable<T> data;
+    int depth;
+    long order;
+
+    Pending(TreeNode<T> node, ColumnarTable<T> data, int depth, long order) {
+      this.node = node;
+      this.data = data;
+      this.depth = depth;
+      this.order = order;
+    }
+  }
+
+  /**
+   * Grows the tree within the node budget, expanding the waiting node with
+   * the most rows first, or the one added first on a tie
+   */
+  void buildBestFirst(TreeNode<T> root, ColumnarTable<T> rootData, boolean parallel) {
+    PriorityQueue<Pending> waiting = new PriorityQueue<Pending>(new Comparator<Pending>() {
+      public int compare(Pending a, Pending b) {
+        if (a.data.rowCount() != b.data.rowCount()) {
+          return Integer.compare(b.data.rowCount(), a.data.rowCount());
+        }
+        return Long.compare(a.order, b.order);
+      }
+    });
+    long order = 0;
+    waiting.add(new Pending(root, rootData, 0, order++));
+    int nodeCount = 1;
+    while (!waiting.isEmpty()) {
+      Pending next = waiting.poll();
+      ColumnarTable<T>[] childData = expand(next.node, next.data, parallel, next.depth,
+                                            maxNodes - nodeCount);
+      nodeCount += childData.length;
+      for (int i = 0; i < childData.length; i++) {
+        waiting.add(new Pending(next.node.children.get(i), childData[i], next.depth + 1, order++));
+      }
+    }
+  }
+
+  /**
+   * Sets the prediction of the node and, unless it is a leaf, splits its
+   * rows on the attribute of maximum information gain, adding a child for
+   * each value, or one for each side of the threshold of a numeric
+   * attribute. The node is a leaf if a stopping criterion holds at its
+   * depth or its split would add more than nodeBudget children. Returns
+   * the table of each child in the order of the node's children, or an
+   * empty array for a leaf.
+   */
+  ColumnarTable<T>[] expand(TreeNode<T> node, ColumnarTable<T> data, boolean parallel, int depth,
+                            int nodeBudget) {
+    // Each node will have a prediction value which is the majority vote
+    // of all values of the target attribute
+    // The prediction will only be used at leaf nodes
+    node.nodePrediction = data.getTargetDictionary().valueOf(data.targetMajority()).toString();
+
+    // If the data table is empty or all target values are the same, we have a leaf node
+    // Otherwise, we split the table and add the children to this node
+    if (data.columnCount() == 0 || data.allTargetsSame()) {
+      return noChildren();
+    }
+    // Stop early at the depth limit or with too few rows to split, and
+    // without a budget for even the two children of a threshold split
+    if (depth >= maxDepth || data.rowCount() < minRows || nodeBudget < 2) {
+      return noChildren();
+    }
+
+    int column;
+    if (parallel && (long) data.rowCount() * data.columnCount() >= PARALLEL_SCORING_THRESHOLD) {
+      column = maxInfoGainColumn(data);
+    } else {
+      column = data.maxInfoGainColumn();
+    }
+    // Numeric attributes whose rows all have one value cannot split the rows
+    if (column < 0) {
+      return noChildren();
+    }
+    if (minGain > 0 && data.informationGain(column) < minGain) {
+      return noChildren();
+    }
+    String attributeName = data.getName(column);
+    int attributeIndex = data.getBaseColumn(column);
+
+    if (data.isNumeric(column)) {
+      int position = data.bestThreshold(column);
+      T value = data.thresholdValue(column, position);
+      double threshold = ColumnarTable.numericValue(value);
+      node.children.add(new TreeNode<T>(attributeName, attributeIndex, value, TreeNode.AT_MOST,
+                                        threshold));
+      node.children.add(new TreeNode<T>(attributeName, attributeIndex, value, TreeNode.ABOVE,
+                                        threshold));
+      return data.splitAt(column, position);
+    }
+
+    int[] codes = data.distinctCodes(column);
+    if (codes.length > nodeBudget) {
+      return noChildren();
+    }
+    // Split the table into a view for each value of the attribute
+    ColumnarTable<T>[] childData = data.split(column, codes);
+
+    for (int code : codes) {
+      // Create a new node for each value of the attribute
+      node.children.add(new TreeNode<T>(attributeName, attributeIndex,
+                                        data.getDictionary(column).valueOf(code)));
+    }
+    return childData;
+  }
+
+  // returns the empty array of child tables that expand returns for a leaf
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  static <T> ColumnarTable<T>[] noChildren() {
+    return new ColumnarTable[0];
+  }
+
+  /**
+   * Scores every column of data concurrently and returns the first of
+   * maximum gain, or -1 if no column can split the rows
+   */
+  int maxInfoGainColumn(final ColumnarTable<T> data) {
+    final double[] gains = new double[data.columnCount()];
+    // Cache the target entropy before the columns share it
+    data.targetEntropy();
+
+    List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+    for (int i = 0; i < gains.length; i++) {
+      final int column = i;
+      tasks.add(new RecursiveAction() {
+        protected void compute() {
+          gains[column] = data.informationGain(column);
+        }
+      });
+    }
+    RecursiveAction.invokeAll(tasks);
+
+    int maxInfoGainColumn = -1;
+    double maxInfoGain = Double.NEGATIVE_INFINITY;
+    for (int column = 0; column < gains.length; column++) {
+      if (gains[column] > maxInfoGain) {
+        maxInfoGainColumn = column;
+        maxInfoGain = gains[column];
+      }
+    }
+    return maxInfoGainColumn;
+  }
+
+  // Expands a node and forks a task for each child's subtree
+  @SuppressWarnings("serial")
+  class BuildTask extends RecursiveAction {
+    TreeNode<T> node;
+    ColumnarTable<T> data;
+    int depth;
+
+    BuildTask(TreeNode<T> node, ColumnarTable<T> data, int depth) {
+      this.node = node;
+      this.data = data;
+      this.depth = depth;
+    }
+
+    protected void compute() {
+      if (data.rowCount() < sequentialCutoff) {
+        buildSequential(node, data, depth);
+        return;
+      }
+      ColumnarTable<T>[] childData = expand(node, data, true, depth, Integer.MAX_VALUE);
+      List<BuildTask> tasks = new ArrayList<BuildTask>();
+      for (int i = 0; i < childData.length; i++) {
+        tasks.add(new BuildTask(node.children.get(i), childData[i], depth + 1));
+      }
+      invokeAll(tasks);
+    }
+  }
+
+  /**
+   * Sets the number of threads used to build trees. A parallelism of 1
+   * builds on the calling thread.
+   */
+  public void setParallelism(int parallelism) {
+    close();
+    pool = (parallelism > 1) ? new ForkJoinPool(parallelism) : null;
+    ownsPool = (pool != null);
+  }
+
+  // Builds trees on a shared pool, or sequentially if pool is null
+  public void setPool(ForkJoinPool pool) {
+    close();
+    this.pool = pool;
+  }
+
+  /**
+   * Shuts down the pool made by setParallelism, if any, and goes back to
+   * running sequentially. A pool given to setPool is left running.
+   */
+  @Override
+  public void close() {
+    if (ownsPool) {
+      pool.shutdown();
+      pool = null;
+      ownsPool = false;
+    }
+  }
+
+  /**
+   * Splits columns whose values are all numbers at thresholds instead of
+   * by value. Off by default, which builds the original ID3 trees.
+   */
+  public void setNumericSplits(boolean numericSplits) {
+    this.numericSplits = numericSplits;
+  }
+
+  /**
+   * Finds splits from histograms of at most maxBins bins per column, or
+   * from the rows if maxBins is 0, the default
+   */
+  public void setHistogramBins(int maxBins) {
+    this.histogramBins = maxBins;
+  }
+
+  // Makes leaves of the nodes at the given depth, the root being at depth 0
+  public void setMaxDepth(int maxDepth) {
+    this.maxDepth = maxDepth;
+  }
+
+  // Makes a leaf of any node with fewer than minRows rows
+  public void setMinRows(int minRows) {
+    this.minRows = minRows;
+  }
+
+  // Makes a leaf of any node whose best split gains less than minGain bits of information
+  public void setMinGain(double minGain) {
+    this.minGain = minGain;
+  }
+
+  /**
+   * Stops growing a tree before it has more than maxNodes nodes, counting
+   * the root, and grows it best first (see above)
+   */
+  public void setMaxNodes(int maxNodes) {
+    this.maxNodes = maxNodes;
+  }
+
+  // Sets the number of rows below which a subtree is built without forking
+  public void setSequentialCutoff(int sequentialCutoff) {
+    this.sequentialCutoff = sequentialCutoff;
+  }
+}
@@ -1,52 +1,54 @@
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 
 public class TreeNode<T> {
-  public static HashMap<String,Integer> attributeNameHash;
+  // How a node's attribute value selects the rows under it
+  public static final int EQUALS = 0;
+  public static final int AT_MOST = 1;
+  public static final int ABOVE = 2;
+
   String nodePrediction;
   String attributeName;
+  // The position of attributeName in the rows given to predict
+  int attributeIndex;
   T attributeValue;
+  int comparison;
+  // For AT_MOST and ABOVE, the number attributeValue stands for
+  double threshold;
   List<TreeNode<T>> children;
 
   public TreeNode() {
     this.nodePrediction = "";
     this.attributeName = "";
+    this.attributeIndex = -1;
     this.attributeValue = null;
     this.children = new ArrayList<TreeNode<T>>();
   }
 
-  public TreeNode(String attributeName, T attributeValue) {
+  public TreeNode(String attributeName, int attributeIndex, T attributeValue) {
     this.nodePrediction = "";
     this.attributeName = attributeName;
+    this.attributeIndex = attributeIndex;
     this.attributeValue = attributeValue;
+    this.comparison = EQUALS;
     this.children = new ArrayList<TreeNode<T>>();
   }
 
+  // A node for the rows whose value of the attribute is at most, or above, a threshold
+  public TreeNode(String attributeName, int attributeIndex, T attributeValue, int comparison,
+                  double threshold) {
+    this(attributeName, attributeIndex, attributeValue);
+    this.comparison = comparison;
+    this.threshold = threshold;
+  }
+
   public TreeNode buildTree(DataTable<T> data) {
-    // Each node will have a prediction value which is the majority vote
-    // of all values of the target attribute
-    // The prediction will only be used at leaf nodes
-    this.nodePrediction = data.targetMajority().toString();
-
-    // If the data table is empty or all target values are the same, we have a leaf node
-    // Otherwise, we filter the table and add the children to this node
-    if (!data.attributesEmpty() && !data.allTargetsSame()) {
-      Attribute<T> nextAttr = data.maxInfoGainAttribute();
-      List<T> attrValues = nextAttr.getDistinctValues();
-
-      for (T value : attrValues) {
-        String attributeName = nextAttr.getAttributeName();
-        // Create a new node for each value of the attribute
-        TreeNode<T> newNode = new TreeNode(attributeName, value);
-        // Filter the table on this child's attribute
-        DataTable<T> filteredData = data.filterAttributes(data.indexOfAttribute(attributeName), value);
-
-        children.add(newNode);
-        // Continue building this branch of the tree with the filtered table
-        newNode.buildTree(filteredData);
-      }
-    }
+    // Splitting reorders the view's rows, so build from a view of our own
+    return buildTree(data.columnar().baseView());
+  }
+
+  public TreeNode<T> buildTree(ColumnarTable<T> data) {
+    new TreeBuilder<T>().build(this, data);
     return this;
   }
 
@@ -57,12 +59,9 @@ public class TreeNode<T> {
     // Otherwise, look for a matching child node
     if (!attrList.isEmpty() && !children.isEmpty()) {
       for (TreeNode<T> node : children) {
-        // Get the index of this node's attribute from the attribute name hash
-        int attributeNumber = attributeNameHash.get(node.attributeName);
-
         // If the child's value matches the value in the attribute list,
         // set the prediction to the prediction of that child
-        if (attrList.get(attributeNumber).equals(node.attributeValue)) {
+        if (node.matches(attrList.get(node.attributeIndex))) {
           prediction = node.predict(attrList);
         }
       }
@@ -71,8 +70,26 @@ public class TreeNode<T> {
     return prediction;
   }
 
+  // returns true if a row with the given value of attributeName belongs under this node
+  boolean matches(T value) {
+    if (comparison == EQUALS) {
+      return value.equals(attributeValue);
+    }
+    double number = ColumnarTable.numericValue(value);
+    if (Double.isNaN(number)) {
+      return false;
+    }
+    return (comparison == AT_MOST) ? number <= threshold : number > threshold;
+  }
+
+  // returns the attribute and value of this node, as attribute:value, attribute<=value or attribute>value
+  String label() {
+    String separator = (comparison == AT_MOST) ? "<=" : (comparison == ABOVE) ? ">" : ":";
+    return attributeName + separator + attributeValue.toString();
+  }
+
   public void preorder() {
-    System.out.print(attributeName + ":" + attributeValue.toString() + " " + nodePrediction + " ");
+    System.out.print(label() + " " + nodePrediction + " ");
     for (TreeNode<T> child : children) {
       child.preorder();
     }
@@ -89,7 +106,7 @@ public class TreeNode<T> {
     // We want non-root nodes to display the name of the attribute and the
     // value they have for that attribute
     if (attributeValue != null) {
-      nodeLabel = attributeName + ":" + attributeValue.toString();
+      nodeLabel = label();
     }
 
     // Leaf nodes will also display the target prediction at that node
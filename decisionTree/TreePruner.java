@@ -0,0 +1,108 @@
+import java.util.Arrays;
+
+/**
+ * Reduced-error pruning of trained trees against held-out rows, rows of a
+ * table that the tree was not trained on.
+ *
+ * The held-out rows are routed down the tree as TreeNode.predict routes a
+ * row. Working up from the leaves, each split node is compared with the
+ * leaf it would be without its children: if the node's own prediction gets
+ * no more of the held-out rows that reach it wrong than its subtree does,
+ * its children are removed. A node that no held-out row reaches is pruned
+ * too, since its subtree is not supported by them. The pruned tree makes
+ * no more errors on the held-out rows than the original, and usually far
+ * fewer nodes.
+ *
+ * The columns of the table must be in the same order as the columns of the
+ * table the tree was trained on.
+ */
+public class TreePruner {
+  /**
+   * Prunes the tree below root against the given rows of the table and
+   * returns the number of nodes removed
+   */
+  public static <T> int pruneReducedError(TreeNode<T> root, ColumnarTable<T> table, int[] rows) {
+    ValueDictionary<T> targets = table.getTargetDictionary();
+    String[] targetOf = new String[targets.size()];
+    for (int code = 0; code < targetOf.length; code++) {
+      targetOf[code] = targets.valueOf(code).toString();
+    }
+    int[] removed = new int[1];
+    prune(root, table, rows.clone(), targetOf, removed);
+    return removed[0];
+  }
+
+  /**
+   * Prunes the subtree below node against rows, the held-out rows that
+   * reach it, and returns the number of them it gets wrong once pruned
+   */
+  static <T> int prune(TreeNode<T> node, ColumnarTable<T> table, int[] rows, String[] targetOf,
+                       int[] removed) {
+    int leafErrors = errors(node.nodePrediction, table, rows, 0, rows.length, targetOf);
+    if (node.children.isEmpty()) {
+      return leafErrors;
+    }
+
+    // Group the rows by the child they go to, last those that match no child
+    int childCount = node.children.size();
+    int[] childOf = new int[rows.length];
+    int[] starts = new int[childCount + 2];
+    for (int i = 0; i < rows.length; i++) {
+      childOf[i] = childCount;
+      for (int child = 0; child < childCount; child++) {
+        TreeNode<T> candidate = node.children.get(child);
+        int column = candidate.attributeIndex;
+        // As in TreeNode.predict, the last matching child wins
+        if (candidate.matches(table.getDictionary(column).valueOf(table.getCode(rows[i], column)))) {
+          childOf[i] = child;
+        }
+      }
+      starts[childOf[i] + 1]++;
+    }
+    for (int child = 1; child < starts.length; child++) {
+      starts[child] += starts[child - 1];
+    }
+    int[] grouped = new int[rows.length];
+    int[] next = Arrays.copyOf(starts, starts.length);
+    for (int i = 0; i < rows.length; i++) {
+      grouped[next[childOf[i]]++] = rows[i];
+    }
+
+    // Rows that match no child stop at this node and take its prediction
+    int subtreeErrors = errors(node.nodePrediction, table, grouped, starts[childCount], rows.length,
+                               targetOf);
+    for (int child = 0; child < childCount; child++) {
+      subtreeErrors += prune(node.children.get(child), table,
+                             Arrays.copyOfRange(grouped, starts[child], starts[child + 1]),
+                             targetOf, removed);
+    }
+
+    if (leafErrors <= subtreeErrors) {
+      removed[0] += countNodes(node) - 1;
+      node.children.clear();
+      return leafErrors;
+    }
+    return subtreeErrors;
+  }
+
+  // returns the number of rows from..to whose target is not the prediction
+  static <T> int errors(String prediction, ColumnarTable<T> table, int[] rows, int from, int to,
+                        String[] targetOf) {
+    int errors = 0;
+    for (int i = from; i < to; i++) {
+      if (!targetOf[table.getTargetCode(rows[i])].equals(prediction)) {
+        errors++;
+      }
+    }
+    return errors;
+  }
+
+  // returns the number of nodes in the subtree below node, including node
+  public static <T> int countNodes(TreeNode<T> node) {
+    int count = 1;
+    for (TreeNode<T> child : node.children) {
+      count += countNodes(child);
+    }
+    return count;
+  }
+}
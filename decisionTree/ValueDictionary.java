@@ -0,0 +1,42 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Maps the distinct values of a column to dense int codes, numbered from 0
+ * in the order the values are first seen, and back again.
+ */
+public class ValueDictionary<T> {
+  HashMap<T,Integer> codes;
+  List<T> values;
+
+  public ValueDictionary() {
+    this.codes = new HashMap<T,Integer>();
+    this.values = new ArrayList<T>();
+  }
+
+  // returns the code of the value, giving it the next code if it is new
+  public int encode(T value) {
+    Integer code = codes.get(value);
+    if (code == null) {
+      code = values.size();
+      codes.put(value, code);
+      values.add(value);
+    }
+    return code;
+  }
+
+  // returns the code of the value, or -1 if it has no code
+  public int codeOf(T value) {
+    Integer code = codes.get(value);
+    return (code == null) ? -1 : code;
+  }
+
+  public T valueOf(int code) {
+    return values.get(code);
+  }
+
+  public int size() {
+    return values.size();
+  }
+}
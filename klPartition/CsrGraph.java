@@ -0,0 +1,220 @@
+import java.util.Arrays;
+
+/**
+ * A Graph stored in compressed sparse row (CSR) form. The neighbors of vertex
+ * u are targets[offsets[u]] to targets[offsets[u + 1] - 1], sorted by vertex
+ * id, with the matching edge weights at the same positions in weights. Each
+ * undirected edge is stored once in the row of each of its endpoints.
+ * Vertices all have a weight of 1 unless vertexWeights is given.
+ */
+public class CsrGraph implements Graph {
+  int[] offsets;
+  int[] targets;
+  int[] weights;
+  int[] vertexWeights;
+
+  public CsrGraph(int[] offsets, int[] targets, int[] weights) {
+    this(offsets, targets, weights, null);
+  }
+
+  public CsrGraph(int[] offsets, int[] targets, int[] weights, int[] vertexWeights) {
+    this.offsets = offsets;
+    this.targets = targets;
+    this.weights = weights;
+    this.vertexWeights = vertexWeights;
+  }
+
+  // copies any Graph into CSR form, keeping only its nonzero edges
+  public static CsrGraph fromGraph(Graph graph) {
+    if (graph instanceof CsrGraph) {
+      return (CsrGraph) graph;
+    }
+    int size = graph.size();
+    int[] offsets = new int[size + 1];
+    for (int u = 0; u < size; u++) {
+      offsets[u + 1] = offsets[u];
+      for (int i = 0; i < graph.degree(u); i++) {
+        if (graph.neighbor(u, i) != u && graph.neighborWeight(u, i) != 0) {
+          offsets[u + 1]++;
+        }
+      }
+    }
+
+    int[] targets = new int[offsets[size]];
+    int[] weights = new int[offsets[size]];
+    int[] vertexWeights = new int[size];
+    boolean unitWeights = true;
+    for (int u = 0; u < size; u++) {
+      int position = offsets[u];
+      for (int i = 0; i < graph.degree(u); i++) {
+        int v = graph.neighbor(u, i);
+        if (v != u && graph.neighborWeight(u, i) != 0) {
+          targets[position] = v;
+          weights[position] = graph.neighborWeight(u, i);
+          position++;
+        }
+      }
+      vertexWeights[u] = graph.vertexWeight(u);
+      unitWeights = unitWeights && vertexWeights[u] == 1;
+    }
+    return new CsrGraph(offsets, targets, weights, unitWeights ? null : vertexWeights);
+  }
+
+  /**
+   * Builds a CsrGraph from the first edgeCount entries of an undirected edge
+   * list. Each edge (from[i], to[i]) is added to both endpoint rows, edges
+   * that appear more than once have their weights summed and self loops are
+   * dropped, since they can never be cut.
+   */
+  public static CsrGraph fromEdges(int size, int[] from, int[] to, int[] weight, int edgeCount) {
+    int[] offsets = new int[size + 1];
+    for (int i = 0; i < edgeCount; i++) {
+      if (from[i] != to[i]) {
+        offsets[from[i] + 1]++;
+        offsets[to[i] + 1]++;
+      }
+    }
+    for (int u = 0; u < size; u++) {
+      offsets[u + 1] += offsets[u];
+    }
+
+    int[] targets = new int[offsets[size]];
+    int[] weights = new int[offsets[size]];
+    int[] next = Arrays.copyOf(offsets, size);
+    for (int i = 0; i < edgeCount; i++) {
+      if (from[i] != to[i]) {
+        targets[next[from[i]]] = to[i];
+        weights[next[from[i]]++] = weight[i];
+        targets[next[to[i]]] = from[i];
+        weights[next[to[i]]++] = weight[i];
+      }
+    }
+
+    return fromUnsortedRows(offsets, targets, weights);
+  }
+
+  /**
+   * Builds a CsrGraph from rows that may be unsorted and may hold the same
+   * target more than once. Rows are sorted and duplicate targets merged by
+   * summing their weights, compacting the arrays in place.
+   */
+  static CsrGraph fromUnsortedRows(int[] offsets, int[] targets, int[] weights) {
+    int size = offsets.length - 1;
+    int position = 0;
+    int rowStart = offsets[0];
+    for (int u = 0; u < size; u++) {
+      int rowEnd = offsets[u + 1];
+      sortRow(targets, weights, rowStart, rowEnd);
+      offsets[u] = position;
+      for (int i = rowStart; i < rowEnd; i++) {
+        if (position > offsets[u] && targets[position - 1] == targets[i]) {
+          weights[position - 1] += weights[i];
+        } else {
+          targets[position] = targets[i];
+          weights[position] = weights[i];
+          position++;
+        }
+      }
+      rowStart = rowEnd;
+    }
+    offsets[size] = position;
+
+    if (position == targets.length) {
+      return new CsrGraph(offsets, targets, weights);
+    }
+    return new CsrGraph(offsets, Arrays.copyOf(targets, position), Arrays.copyOf(weights, position));
+  }
+
+  private static long pack(int target, int weight) {
+    return ((long) target << 32) | (weight & 0xffffffffL);
+  }
+
+  public int size() {
+    return offsets.length - 1;
+  }
+
+  public int weight(int u, int v) {
+    int i = Arrays.binarySearch(targets, offsets[u], offsets[u + 1], v);
+    return (i < 0) ? 0 : weights[i];
+  }
+
+  public int degree(int u) {
+    return offsets[u + 1] - offsets[u];
+  }
+
+  public int neighbor(int u, int i) {
+    return targets[offsets[u] + i];
+  }
+
+  public int neighborWeight(int u, int i) {
+    return weights[offsets[u] + i];
+  }
+
+  public int vertexWeight(int u) {
+    return (vertexWeights == null) ? 1 : vertexWeights[u];
+  }
+
+  /**
+   * Returns the subgraph induced by the given vertices. Vertex vertices[i] of
+   * this graph becomes vertex i of the subgraph and keeps its weight, and
+   * only edges with both endpoints in the subgraph are kept.
+   */
+  public CsrGraph inducedSubgraph(int[] vertices) {
+    int[] localId = new int[size()];
+    Arrays.fill(localId, -1);
+    for (int i = 0; i < vertices.length; i++) {
+      localId[vertices[i]] = i;
+    }
+
+    int[] subOffsets = new int[vertices.length + 1];
+    for (int i = 0; i < vertices.length; i++) {
+      subOffsets[i + 1] = subOffsets[i];
+      for (int j = offsets[vertices[i]]; j < offsets[vertices[i] + 1]; j++) {
+        if (localId[targets[j]] != -1) {
+          subOffsets[i + 1]++;
+        }
+      }
+    }
+
+    // Local ids only keep each row sorted when vertices is sorted, so rows
+    // are checked and sorted after they are copied
+    int[] subTargets = new int[subOffsets[vertices.length]];
+    int[] subWeights = new int[subOffsets[vertices.length]];
+    int[] subVertexWeights = new int[vertices.length];
+    for (int i = 0; i < vertices.length; i++) {
+      int position = subOffsets[i];
+      for (int j = offsets[vertices[i]]; j < offsets[vertices[i] + 1]; j++) {
+        if (localId[targets[j]] != -1) {
+          subTargets[position] = localId[targets[j]];
+          subWeights[position] = weights[j];
+          position++;
+        }
+      }
+      sortRow(subTargets, subWeights, subOffsets[i], subOffsets[i + 1]);
+      subVertexWeights[i] = vertexWeight(vertices[i]);
+    }
+    return new CsrGraph(subOffsets, subTargets, subWeights, subVertexWeights);
+  }
+
+  // Sorts targets[from..to) ascending, keeping weights in step
+  private static void sortRow(int[] targets, int[] weights, int from, int to) {
+    for (int i = from + 1; i < to; i++) {
+      if (targets[i] < targets[i - 1]) {
+        long[] packed = new long[to - from];
+        for (int j = from; j < to; j++) {
+          packed[j - from] = pack(targets[j], weights[j]);
+        }
+        Arrays.sort(packed);
+        for (int j = from; j < to; j++) {
+          targets[j] = (int) (packed[j - from] >>> 32);
+          weights[j] = (int) packed[j - from];
+        }
+        return;
+      }
+    }
+  }
+
+  public int edgeCount() {
+    return targets.length / 2;
+  }
+}
@@ -0,0 +1,50 @@
+/**
+ * A Graph stored as a dense, row-major int[] adjacency matrix. Every vertex
+ * has size() neighbor slots, one per vertex in the graph, so slots holding a
+ * weight of 0 are simply edges that do not exist.
+ */
+public class DenseGraph implements Graph {
+  int size;
+  int[] matrix;
+
+  public DenseGraph(int size, int[] matrix) {
+    if (matrix.length != size * size) {
+      throw new IllegalArgumentException("Expected a " + size + "x" + size + " matrix");
+    }
+    this.size = size;
+    this.matrix = matrix;
+  }
+
+  // copies a boxed adjacency matrix into primitive storage, treating null as 0
+  public static DenseGraph fromMatrix(Integer[][] adjacencyMatrix) {
+    int size = adjacencyMatrix.length;
+    int[] matrix = new int[size * size];
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        Integer weight = adjacencyMatrix[i][j];
+        matrix[i * size + j] = (weight == null) ? 0 : weight;
+      }
+    }
+    return new DenseGraph(size, matrix);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int weight(int u, int v) {
+    return matrix[u * size + v];
+  }
+
+  public int degree(int u) {
+    return size;
+  }
+
+  public int neighbor(int u, int i) {
+    return i;
+  }
+
+  public int neighborWeight(int u, int i) {
+    return matrix[u * size + i];
+  }
+}
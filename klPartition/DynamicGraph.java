@@ -0,0 +1,158 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A Graph that can be edited in place. Each vertex keeps its own unsorted
+ * int[] rows of neighbors and edge weights, which grow as edges are added,
+ * so adding or removing an edge only touches the rows of its endpoints.
+ *
+ * Vertex ids never change. A removed vertex keeps its id but has no edges
+ * and a weight of 0, and new vertices always take the next unused id.
+ */
+public class DynamicGraph implements Graph {
+  int size;
+  int[][] targets;
+  int[][] weights;
+  int[] degrees;
+  int[] vertexWeights;
+  BitSet removed;
+
+  public DynamicGraph(Graph graph) {
+    this.size = graph.size();
+    this.targets = new int[Math.max(1, size)][];
+    this.weights = new int[Math.max(1, size)][];
+    this.degrees = new int[Math.max(1, size)];
+    this.vertexWeights = new int[Math.max(1, size)];
+    this.removed = new BitSet();
+
+    for (int u = 0; u < size; u++) {
+      int degree = 0;
+      for (int i = 0; i < graph.degree(u); i++) {
+        if (graph.neighbor(u, i) != u && graph.neighborWeight(u, i) != 0) {
+          degree++;
+        }
+      }
+      targets[u] = new int[degree];
+      weights[u] = new int[degree];
+      for (int i = 0; i < graph.degree(u); i++) {
+        int v = graph.neighbor(u, i);
+        if (v != u && graph.neighborWeight(u, i) != 0) {
+          targets[u][degrees[u]] = v;
+          weights[u][degrees[u]++] = graph.neighborWeight(u, i);
+        }
+      }
+      vertexWeights[u] = graph.vertexWeight(u);
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int weight(int u, int v) {
+    int i = slotOf(u, v);
+    return (i < 0) ? 0 : weights[u][i];
+  }
+
+  public int degree(int u) {
+    return degrees[u];
+  }
+
+  public int neighbor(int u, int i) {
+    return targets[u][i];
+  }
+
+  public int neighborWeight(int u, int i) {
+    return weights[u][i];
+  }
+
+  public int vertexWeight(int u) {
+    return vertexWeights[u];
+  }
+
+  public boolean isRemoved(int u) {
+    return removed.get(u);
+  }
+
+  // Adds a vertex with the given weight and no edges, returning its id
+  public int addVertex(int vertexWeight) {
+    if (size == degrees.length) {
+      int capacity = 2 * size;
+      targets = Arrays.copyOf(targets, capacity);
+      weights = Arrays.copyOf(weights, capacity);
+      degrees = Arrays.copyOf(degrees, capacity);
+      vertexWeights = Arrays.copyOf(vertexWeights, capacity);
+    }
+    targets[size] = new int[4];
+    weights[size] = new int[4];
+    vertexWeights[size] = vertexWeight;
+    return size++;
+  }
+
+  // Removes every edge of u and sets its weight to 0
+  public void removeVertex(int u) {
+    while (degrees[u] > 0) {
+      removeEdge(u, targets[u][degrees[u] - 1]);
+    }
+    vertexWeights[u] = 0;
+    removed.set(u);
+  }
+
+  /**
+   * Adds weight to the edge between u and v, creating the edge if it does
+   * not exist yet. Self loops are ignored, since they can never be cut.
+   */
+  public void addEdge(int u, int v, int weight) {
+    if (u == v) {
+      return;
+    }
+    addHalfEdge(u, v, weight);
+    addHalfEdge(v, u, weight);
+  }
+
+  // Removes the edge between u and v, returning its weight (0 if there was none)
+  public int removeEdge(int u, int v) {
+    int weight = removeHalfEdge(u, v);
+    removeHalfEdge(v, u);
+    return weight;
+  }
+
+  private void addHalfEdge(int u, int v, int weight) {
+    int i = slotOf(u, v);
+    if (i >= 0) {
+      weights[u][i] += weight;
+      return;
+    }
+    if (degrees[u] == targets[u].length) {
+      int capacity = Math.max(4, 2 * degrees[u]);
+      targets[u] = Arrays.copyOf(targets[u], capacity);
+      weights[u] = Arrays.copyOf(weights[u], capacity);
+    }
+    targets[u][degrees[u]] = v;
+    weights[u][degrees[u]++] = weight;
+  }
+
+  // Removes v from the row of u by moving the last slot into its place
+  private int removeHalfEdge(int u, int v) {
+    int i = slotOf(u, v);
+    if (i < 0) {
+      return 0;
+    }
+    int weight = weights[u][i];
+    int last = --degrees[u];
+    targets[u][i] = targets[u][last];
+    weights[u][i] = weights[u][last];
+    return weight;
+  }
+
+  // returns the slot of v in the row of u, or -1 if they are not adjacent
+  private int slotOf(int u, int v) {
+    int[] row = targets[u];
+    for (int i = 0; i < degrees[u]; i++) {
+      if (row[i] == v) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,98 @@
+import java.util.Arrays;
+
+/**
+ * The bucket list structure from Fiduccia-Mattheyses. Vertices are kept in
+ * doubly linked lists, one list per gain value from -maxGain to maxGain, so
+ * inserting, removing, re-keying a vertex and finding a vertex of maximum
+ * gain all take constant time (amortized, in the case of finding the max).
+ * The links are int[] arrays indexed by vertex id.
+ *
+ * A gain outside the range is kept in the end bucket on its side, so callers
+ * that cannot bound gains ahead of time still get a vertex of (at least)
+ * maximum bucket from peekMax and should read exact gains elsewhere.
+ * The range is capped at MAX_RANGE, so heavily weighted graphs do not need
+ * a huge bucket array; their larger gains share the end buckets.
+ */
+public class GainBuckets {
+  // Largest maxGain given its own buckets, 2 * MAX_RANGE + 1 buckets in all
+  static final int MAX_RANGE = 1 << 20;
+
+  int maxGain;
+  int[] head;
+  int[] next, prev;
+  int[] bucketOf;
+  int maxBucket;
+  int count;
+
+  public GainBuckets(int vertexCount, int maxGain) {
+    this.maxGain = Math.min(maxGain, MAX_RANGE);
+    this.head = new int[2*this.maxGain + 1];
+    this.next = new int[vertexCount];
+    this.prev = new int[vertexCount];
+    this.bucketOf = new int[vertexCount];
+    clear();
+  }
+
+  public void clear() {
+    Arrays.fill(head, -1);
+    Arrays.fill(bucketOf, -1);
+    maxBucket = -1;
+    count = 0;
+  }
+
+  // Adds vertex v to the list for the given gain
+  public void insert(int v, int gain) {
+    int bucket = Math.max(-maxGain, Math.min(maxGain, gain)) + maxGain;
+    next[v] = head[bucket];
+    prev[v] = -1;
+    if (head[bucket] != -1) {
+      prev[head[bucket]] = v;
+    }
+    head[bucket] = v;
+    bucketOf[v] = bucket;
+    if (bucket > maxBucket) {
+      maxBucket = bucket;
+    }
+    count++;
+  }
+
+  public void remove(int v) {
+    int bucket = bucketOf[v];
+    if (prev[v] != -1) {
+      next[prev[v]] = next[v];
+    } else {
+      head[bucket] = next[v];
+    }
+    if (next[v] != -1) {
+      prev[next[v]] = prev[v];
+    }
+    bucketOf[v] = -1;
+    count--;
+  }
+
+  // Moves vertex v to the list for its new gain
+  public void update(int v, int gain) {
+    remove(v);
+    insert(v, gain);
+  }
+
+  public boolean contains(int v) {
+    return bucketOf[v] != -1;
+  }
+
+  public boolean isEmpty() {
+    return count == 0;
+  }
+
+  // returns a vertex with the highest gain, or -1 if there are no vertices
+  public int peekMax() {
+    while (maxBucket >= 0 && head[maxBucket] == -1) {
+      maxBucket--;
+    }
+    return (maxBucket < 0) ? -1 : head[maxBucket];
+  }
+
+  public int gainOf(int v) {
+    return bucketOf[v] - maxGain;
+  }
+}
@@ -0,0 +1,27 @@
+/**
+ * A weighted, undirected graph over the vertex ids 0 to size() - 1.
+ *
+ * Neighbors are visited by position, from 0 to degree(u) - 1, so that the
+ * partitioning code can walk the primitive arrays behind each implementation
+ * without allocating iterators or boxing weights.
+ */
+public interface Graph {
+  int size();
+
+  // returns the weight of the edge between u and v, or 0 if there is no edge
+  int weight(int u, int v);
+
+  // returns the number of neighbor slots of vertex u
+  int degree(int u);
+
+  // returns the vertex id in neighbor slot i of vertex u
+  int neighbor(int u, int i);
+
+  // returns the edge weight in neighbor slot i of vertex u
+  int neighborWeight(int u, int i);
+
+  // returns the weight of vertex u, which is what partition balance is measured in
+  default int vertexWeight(int u) {
+    return 1;
+  }
+}
@@ -0,0 +1,62 @@
+import java.util.Arrays;
+
+/**
+ * A batch of edits to a DynamicGraph, applied in the order they were added.
+ *
+ * Added vertices take the next unused ids in order, so if the graph has n
+ * vertices when the batch is applied, the first vertex added by the batch is
+ * n, the second n + 1 and so on, and later edges in the batch may use them.
+ */
+public class GraphChanges {
+  static final int ADD_EDGE = 0;
+  static final int REMOVE_EDGE = 1;
+  static final int ADD_VERTEX = 2;
+  static final int REMOVE_VERTEX = 3;
+
+  // Each change is a type and up to three int arguments
+  int[] types;
+  int[] arguments;
+  int count;
+
+  public GraphChanges() {
+    this.types = new int[16];
+    this.arguments = new int[48];
+  }
+
+  public GraphChanges addEdge(int u, int v, int weight) {
+    return add(ADD_EDGE, u, v, weight);
+  }
+
+  public GraphChanges removeEdge(int u, int v) {
+    return add(REMOVE_EDGE, u, v, 0);
+  }
+
+  public GraphChanges addVertex(int vertexWeight) {
+    return add(ADD_VERTEX, vertexWeight, 0, 0);
+  }
+
+  public GraphChanges removeVertex(int u) {
+    return add(REMOVE_VERTEX, u, 0, 0);
+  }
+
+  private GraphChanges add(int type, int first, int second, int third) {
+    if (count == types.length) {
+      types = Arrays.copyOf(types, 2 * count);
+      arguments = Arrays.copyOf(arguments, 6 * count);
+    }
+    types[count] = type;
+    arguments[3*count] = first;
+    arguments[3*count + 1] = second;
+    arguments[3*count + 2] = third;
+    count++;
+    return this;
+  }
+
+  public int size() {
+    return count;
+  }
+
+  public void clear() {
+    count = 0;
+  }
+}
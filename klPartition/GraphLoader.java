@@ -0,0 +1,303 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Loads graphs from files without building an adjacency matrix first.
+ *
+ * Text edge lists have one edge per line, "u v" or "u v weight", with vertex
+ * ids from 0 and fields separated by spaces, tabs or commas. Edges without a
+ * weight have weight 1, and lines starting with # or % are comments. The file
+ * is streamed twice: once to count the degree of every vertex and once to
+ * fill the CSR rows, so no edge list is held in memory.
+ *
+ * Binary graph files hold the CSR arrays of a graph as little-endian ints:
+ * a header of magic, version, vertex count, half edge count and flags,
+ * followed by offsets, targets, weights and, if flag bit 0 is set, vertex
+ * weights. They are written by writeBinary and opened by mapBinary, which
+ * memory maps the arrays instead of reading them.
+ */
+public class GraphLoader {
+  static final int MAGIC = 0x4B4C4731;  // "KLG1"
+  static final int VERSION = 1;
+  static final int HEADER_BYTES = 20;
+  static final int FLAG_VERTEX_WEIGHTS = 1;
+  static final int BUFFER_BYTES = 1 << 16;
+  // Most vertices a graph can have, so that its size + 1 offsets fit in an array
+  static final int MAX_VERTICES = Integer.MAX_VALUE - 9;
+
+  public static CsrGraph readEdgeList(String fileName) throws IOException {
+    // First pass: find the number of vertices and the degree of each one
+    int[] degrees = new int[1024];
+    int size = 0;
+    long halfEdges = 0;
+    try (EdgeListScanner scanner = new EdgeListScanner(fileName)) {
+      while (scanner.nextEdge()) {
+        int from = scanner.from;
+        int to = scanner.to;
+        if (from >= MAX_VERTICES || to >= MAX_VERTICES) {
+          throw new IOException("Vertex id too large on line " + scanner.lineNumber + " of "
+                                + fileName);
+        }
+        size = Math.max(size, Math.max(from, to) + 1);
+        if (size > degrees.length) {
+          degrees = Arrays.copyOf(degrees, Math.max(size, 2 * degrees.length));
+        }
+        if (from != to) {
+          degrees[from]++;
+          degrees[to]++;
+          halfEdges += 2;
+        }
+      }
+    }
+    if (halfEdges > Integer.MAX_VALUE - 8) {
+      throw new IOException("Too many edges for a CsrGraph in " + fileName);
+    }
+
+    int[] offsets = new int[size + 1];
+    for (int u = 0; u < size; u++) {
+      offsets[u + 1] = offsets[u] + degrees[u];
+    }
+
+    // Second pass: place each edge in the rows of both of its endpoints
+    int[] targets = new int[(int) halfEdges];
+    int[] weights = new int[(int) halfEdges];
+    int[] next = Arrays.copyOf(offsets, size);
+    try (EdgeListScanner scanner = new EdgeListScanner(fileName)) {
+      while (scanner.nextEdge()) {
+        int from = scanner.from;
+        int to = scanner.to;
+        if (from != to) {
+          if (next[from] == offsets[from + 1] || next[to] == offsets[to + 1]) {
+            throw new IOException("File changed while it was being read: " + fileName);
+          }
+          targets[next[from]] = to;
+          weights[next[from]++] = scanner.weight;
+          targets[next[to]] = from;
+          weights[next[to]++] = scanner.weight;
+        }
+      }
+    }
+
+    return CsrGraph.fromUnsortedRows(offsets, targets, weights);
+  }
+
+  /**
+   * Writes the graph to a binary graph file. Graphs that are not already a
+   * CsrGraph are converted first, keeping only their nonzero edges.
+   */
+  public static void writeBinary(Graph graph, String fileName) throws IOException {
+    CsrGraph csr = CsrGraph.fromGraph(graph);
+    int size = csr.size();
+    boolean hasVertexWeights = csr.vertexWeights != null;
+
+    try (FileChannel channel = FileChannel.open(Paths.get(fileName),
+                                                StandardOpenOption.CREATE,
+                                                StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+      buffer.putInt(MAGIC);
+      buffer.putInt(VERSION);
+      buffer.putInt(size);
+      buffer.putInt(csr.targets.length);
+      buffer.putInt(hasVertexWeights ? FLAG_VERTEX_WEIGHTS : 0);
+
+      writeInts(channel, buffer, csr.offsets);
+      writeInts(channel, buffer, csr.targets);
+      writeInts(channel, buffer, csr.weights);
+      if (hasVertexWeights) {
+        writeInts(channel, buffer, csr.vertexWeights);
+      }
+
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+  }
+
+  // Appends values to the buffer, writing the buffer out whenever it fills up
+  private static void writeInts(FileChannel channel, ByteBuffer buffer, int[] values)
+      throws IOException {
+    for (int value : values) {
+      if (buffer.remaining() < Integer.BYTES) {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+        buffer.clear();
+      }
+      buffer.putInt(value);
+    }
+  }
+
+  /**
+   * Opens a binary graph file by memory mapping it. The mapping stays valid
+   * after this returns, so the file does not need to be kept open.
+   */
+  public static MappedCsrGraph mapBinary(String fileName) throws IOException {
+    try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+      while (header.hasRemaining()) {
+        if (channel.read(header) < 0) {
+          throw new IOException("Not a binary graph file: " + fileName);
+        }
+      }
+      header.flip();
+      if (header.getInt() != MAGIC) {
+        throw new IOException("Not a binary graph file: " + fileName);
+      }
+      int version = header.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported binary graph version " + version + " in " + fileName);
+      }
+      int size = header.getInt();
+      int halfEdges = header.getInt();
+      int flags = header.getInt();
+      if (size < 0 || size > MAX_VERTICES || halfEdges < 0) {
+        throw new IOException("Corrupt binary graph header in " + fileName);
+      }
+
+      long expectedBytes = HEADER_BYTES + 4L * (size + 1 + 2L * halfEdges);
+      if ((flags & FLAG_VERTEX_WEIGHTS) != 0) {
+        expectedBytes += 4L * size;
+      }
+      if (channel.size() < expectedBytes) {
+        throw new IOException("Truncated binary graph file: " + fileName);
+      }
+
+      long position = HEADER_BYTES;
+      IntBuffer offsets = mapInts(channel, position, size + 1);
+      position += 4L * (size + 1);
+      IntBuffer targets = mapInts(channel, position, halfEdges);
+      position += 4L * halfEdges;
+      IntBuffer weights = mapInts(channel, position, halfEdges);
+      position += 4L * halfEdges;
+      IntBuffer vertexWeights = null;
+      if ((flags & FLAG_VERTEX_WEIGHTS) != 0) {
+        vertexWeights = mapInts(channel, position, size);
+      }
+
+      return new MappedCsrGraph(offsets, targets, weights, vertexWeights);
+    }
+  }
+
+  // Maps count ints of the file, starting at the given byte position, as an IntBuffer
+  private static IntBuffer mapInts(FileChannel channel, long position, int count)
+      throws IOException {
+    if (4L * count > Integer.MAX_VALUE) {
+      throw new IOException("Graph section of " + count + " ints is too large to map");
+    }
+    return channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * count)
+                  .order(ByteOrder.LITTLE_ENDIAN)
+                  .asIntBuffer();
+  }
+
+  /**
+   * Reads the edges of a text edge list one at a time, parsing the bytes of
+   * the file directly rather than creating a String for each line.
+   */
+  static class EdgeListScanner implements Closeable {
+    String fileName;
+    FileChannel channel;
+    ByteBuffer buffer;
+    long[] fields;
+    int lineNumber;
+    int from, to, weight;
+
+    EdgeListScanner(String fileName) throws IOException {
+      this.fileName = fileName;
+      this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+      this.buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+      this.buffer.flip();
+      this.fields = new long[3];
+    }
+
+    /**
+     * Reads the next edge into from, to and weight. Returns false once the
+     * end of the file is reached.
+     */
+    boolean nextEdge() throws IOException {
+      while (true) {
+        int c = read();
+        if (c == -1) {
+          return false;
+        }
+        lineNumber++;
+
+        // Skip comment lines entirely
+        if (c == '#' || c == '%') {
+          while (c != '\n' && c != -1) {
+            c = read();
+          }
+          continue;
+        }
+
+        int fieldCount = 0;
+        while (c != '\n' && c != -1) {
+          if (c == '-' || (c >= '0' && c <= '9')) {
+            if (fieldCount == 3) {
+              throw malformed();
+            }
+            boolean negative = c == '-';
+            long value = negative ? 0 : c - '0';
+            c = read();
+            if (negative && !(c >= '0' && c <= '9')) {
+              throw malformed();
+            }
+            while (c >= '0' && c <= '9') {
+              value = value * 10 + (c - '0');
+              if (value > Integer.MAX_VALUE) {
+                throw malformed();
+              }
+              c = read();
+            }
+            fields[fieldCount++] = negative ? -value : value;
+          } else if (c == ' ' || c == '\t' || c == ',' || c == '\r') {
+            c = read();
+          } else {
+            throw malformed();
+          }
+        }
+
+        if (fieldCount == 0) {
+          continue;
+        }
+        if (fieldCount == 1 || fields[0] < 0 || fields[1] < 0) {
+          throw malformed();
+        }
+        from = (int) fields[0];
+        to = (int) fields[1];
+        weight = (fieldCount == 3) ? (int) fields[2] : 1;
+        return true;
+      }
+    }
+
+    // returns the next byte of the file, or -1 at the end of the file
+    int read() throws IOException {
+      if (!buffer.hasRemaining()) {
+        buffer.clear();
+        int bytesRead = channel.read(buffer);
+        buffer.flip();
+        if (bytesRead <= 0) {
+          return -1;
+        }
+      }
+      return buffer.get() & 0xff;
+    }
+
+    IOException malformed() {
+      return new IOException("Malformed edge on line " + lineNumber + " of " + fileName);
+    }
+
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+}
@@ -0,0 +1,416 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Keeps a bisection of a changing graph up to date without repartitioning
+ * from scratch.
+ *
+ * The partitioner holds the graph as a DynamicGraph along with the cost of
+ * every vertex, and keeps those costs exact as edits are applied: an edge
+ * change only alters the costs of its two endpoints. After a batch of
+ * changes, Fiduccia-Mattheyses passes are run starting only from the
+ * vertices the batch touched, widening to the neighbors of each vertex that
+ * moves. The work done by a repartition is proportional to the region
+ * around the changes rather than to the size of the graph.
+ */
+public class IncrementalPartitioner {
+  DynamicGraph graph;
+  BitSet partitionA;
+  int[] costs;
+  long weightA;
+  long totalWeight;
+  long cutWeight;
+  long balanceTolerance;
+  int stallLimit;
+  int maxPasses;
+
+  // Gains are clamped to this range in the buckets, see GainBuckets. It
+  // grows with the largest weighted degree as edges are added, up to
+  // GainBuckets.MAX_RANGE.
+  int bucketRange;
+
+  // Vertices touched by the last batch of changes, which seed refinement
+  int[] touched;
+  int touchedCount;
+  BitSet isTouched;
+
+  // State for a single local pass
+  GainBuckets bucketsA, bucketsB;
+  BitSet locked;
+  int[] moves;
+  int moveCount;
+  int[] queued;
+  int queuedCount;
+
+  /**
+   * Starts from an existing partition of the graph, such as the result of a
+   * previous KLEngine or MultilevelPartitioner run. This is the only step
+   * that looks at the whole graph.
+   */
+  public IncrementalPartitioner(Graph graph, BitSet partitionA) {
+    this.graph = new DynamicGraph(graph);
+    this.partitionA = (BitSet) partitionA.clone();
+    this.costs = new int[Math.max(1, graph.size())];
+    this.locked = new BitSet();
+    this.isTouched = new BitSet();
+    this.touched = new int[16];
+    this.stallLimit = 100;
+    this.maxPasses = 10;
+
+    int maxVertexWeight = 0;
+    for (int u = 0; u < graph.size(); u++) {
+      boolean inA = partitionA.get(u);
+      long weightedDegree = 0;
+      for (int i = 0; i < this.graph.degree(u); i++) {
+        int weight = this.graph.neighborWeight(u, i);
+        weightedDegree += Math.abs(weight);
+        if (partitionA.get(this.graph.neighbor(u, i)) == inA) {
+          costs[u] -= weight;
+        } else {
+          costs[u] += weight;
+          cutWeight += weight;
+        }
+      }
+      totalWeight += graph.vertexWeight(u);
+      if (inA) {
+        weightA += graph.vertexWeight(u);
+      }
+      maxVertexWeight = Math.max(maxVertexWeight, graph.vertexWeight(u));
+      bucketRange = (int) Math.min(Math.max(bucketRange, weightedDegree), GainBuckets.MAX_RANGE);
+    }
+    // Each cut edge was counted from both of its endpoints
+    cutWeight /= 2;
+    this.balanceTolerance = Math.max(1, maxVertexWeight);
+  }
+
+  /**
+   * Applies a batch of changes to the graph, then refines the partition
+   * around the vertices they touched. Returns the amount the cut weight went
+   * down by during refinement.
+   */
+  public int repartition(GraphChanges changes) {
+    apply(changes);
+    return refine();
+  }
+
+  // Applies a batch of changes, keeping costs, weights and the cut exact
+  public void apply(GraphChanges changes) {
+    for (int c = 0; c < changes.count; c++) {
+      int first = changes.arguments[3*c];
+      int second = changes.arguments[3*c + 1];
+      int third = changes.arguments[3*c + 2];
+
+      switch (changes.types[c]) {
+        case GraphChanges.ADD_EDGE:
+          checkVertex(first);
+          checkVertex(second);
+          if (graph.isRemoved(first) || graph.isRemoved(second)) {
+            throw new IllegalArgumentException("Edge " + first + "-" + second
+                                               + " touches a removed vertex");
+          }
+          if (first != second) {
+            graph.addEdge(first, second, third);
+            edgeChanged(first, second, third);
+            // Only added weight can raise a weighted degree, and with it the largest gain
+            long degree = Math.max(weightedDegree(first), weightedDegree(second));
+            bucketRange = (int) Math.min(Math.max(bucketRange, degree), GainBuckets.MAX_RANGE);
+          }
+          break;
+        case GraphChanges.REMOVE_EDGE:
+          checkVertex(first);
+          checkVertex(second);
+          edgeChanged(first, second, -graph.removeEdge(first, second));
+          break;
+        case GraphChanges.ADD_VERTEX:
+          addVertex(first);
+          break;
+        case GraphChanges.REMOVE_VERTEX:
+          checkVertex(first);
+          removeVertex(first);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown change type " + changes.types[c]);
+      }
+    }
+  }
+
+  // Rejects a vertex id the graph does not have, before any change is made for it
+  void checkVertex(int u) {
+    if (u < 0 || u >= graph.size()) {
+      throw new IllegalArgumentException("No vertex " + u + " in a graph of " + graph.size());
+    }
+  }
+
+  // Updates costs and the cut for weight being added to (or taken from) edge u-v
+  void edgeChanged(int u, int v, int weight) {
+    if (weight == 0) {
+      return;
+    }
+    if (partitionA.get(u) == partitionA.get(v)) {
+      costs[u] -= weight;
+      costs[v] -= weight;
+    } else {
+      costs[u] += weight;
+      costs[v] += weight;
+      cutWeight += weight;
+    }
+    touch(u);
+    touch(v);
+  }
+
+  // Adds a vertex to the lighter side of the partition
+  void addVertex(int vertexWeight) {
+    int u = graph.addVertex(vertexWeight);
+    if (u >= costs.length) {
+      costs = Arrays.copyOf(costs, 2 * costs.length);
+    }
+    costs[u] = 0;
+    totalWeight += vertexWeight;
+    if (weightA < totalWeight / 2) {
+      partitionA.set(u);
+      weightA += vertexWeight;
+    }
+    balanceTolerance = Math.max(balanceTolerance, vertexWeight);
+    touch(u);
+  }
+
+  void removeVertex(int u) {
+    while (graph.degree(u) > 0) {
+      int v = graph.neighbor(u, graph.degree(u) - 1);
+      edgeChanged(u, v, -graph.removeEdge(u, v));
+    }
+    totalWeight -= graph.vertexWeight(u);
+    if (partitionA.get(u)) {
+      weightA -= graph.vertexWeight(u);
+      partitionA.clear(u);
+    }
+    graph.removeVertex(u);
+    costs[u] = 0;
+  }
+
+  // returns the largest amount u's cost can change by, the sum of its edge weights
+  long weightedDegree(int u) {
+    long total = 0;
+    for (int i = 0; i < graph.degree(u); i++) {
+      total += Math.abs(graph.neighborWeight(u, i));
+    }
+    return total;
+  }
+
+  void touch(int u) {
+    if (!isTouched.get(u)) {
+      isTouched.set(u);
+      if (touchedCount == touched.length) {
+        touched = Arrays.copyOf(touched, 2 * touchedCount);
+      }
+      touched[touchedCount++] = u;
+    }
+  }
+
+  /**
+   * Runs local Fiduccia-Mattheyses passes seeded from the touched vertices
+   * until a pass no longer improves the cut or maxPasses is reached. Returns
+   * the total amount the cut weight went down by.
+   */
+  public int refine() {
+    int totalGain = 0;
+    for (int pass = 0; pass < maxPasses; pass++) {
+      boolean wasBalanced = isBalanced(weightA);
+      int gain = localPass();
+      totalGain += gain;
+      if (gain <= 0 && (wasBalanced || !isBalanced(weightA))) {
+        break;
+      }
+    }
+
+    for (int i = 0; i < touchedCount; i++) {
+      isTouched.clear(touched[i]);
+    }
+    touchedCount = 0;
+    return totalGain;
+  }
+
+  /**
+   * Runs one local pass. The touched vertices go into the gain buckets, and
+   * the unlocked neighbors of each moved vertex join them, so the pass only
+   * reaches vertices connected to the changes through moved vertices. The
+   * best prefix of moves is kept, the rest are undone, and every vertex the
+   * kept moves reached is touched for the next pass.
+   */
+  int localPass() {
+    prepareBuckets();
+    for (int i = 0; i < touchedCount; i++) {
+      if (!graph.isRemoved(touched[i])) {
+        enqueue(touched[i]);
+      }
+    }
+
+    long currentWeightA = weightA;
+    long bestWeightA = weightA;
+    int gainSum = 0;
+    int bestGainSum = 0;
+    int bestMoveCount = 0;
+    moveCount = 0;
+
+    while (moveCount - bestMoveCount < stallLimit) {
+      int fromA = bucketsA.peekMax();
+      int fromB = bucketsB.peekMax();
+      if (fromA != -1 && !canMove(currentWeightA - graph.vertexWeight(fromA), currentWeightA)) {
+        fromA = -1;
+      }
+      if (fromB != -1 && !canMove(currentWeightA + graph.vertexWeight(fromB), currentWeightA)) {
+        fromB = -1;
+      }
+      if (fromA == -1 && fromB == -1) {
+        break;
+      }
+
+      int v;
+      if (fromB == -1) {
+        v = fromA;
+      } else if (fromA == -1) {
+        v = fromB;
+      } else if (costs[fromA] != costs[fromB]) {
+        v = (costs[fromA] > costs[fromB]) ? fromA : fromB;
+      } else {
+        v = (2*currentWeightA >= totalWeight) ? fromA : fromB;
+      }
+
+      gainSum += costs[v];
+      currentWeightA += partitionA.get(v) ? -graph.vertexWeight(v) : graph.vertexWeight(v);
+      (partitionA.get(v) ? bucketsA : bucketsB).remove(v);
+      locked.set(v);
+      moves[moveCount++] = v;
+      moveVertex(v, true);
+
+      if (isBetterState(gainSum, currentWeightA, bestGainSum, bestWeightA)) {
+        bestGainSum = gainSum;
+        bestWeightA = currentWeightA;
+        bestMoveCount = moveCount;
+      }
+    }
+
+    // Undo the moves past the best prefix, newest first
+    for (int i = moveCount - 1; i >= bestMoveCount; i--) {
+      moveVertex(moves[i], false);
+    }
+    weightA = bestWeightA;
+    cutWeight -= bestGainSum;
+
+    for (int i = 0; i < moveCount; i++) {
+      locked.clear(moves[i]);
+    }
+    for (int i = 0; i < queuedCount; i++) {
+      if (bucketsA.contains(queued[i])) {
+        bucketsA.remove(queued[i]);
+      } else if (bucketsB.contains(queued[i])) {
+        bucketsB.remove(queued[i]);
+      }
+    }
+    // The kept moves and the vertices around them seed the next pass
+    for (int i = 0; i < bestMoveCount; i++) {
+      touch(moves[i]);
+    }
+    queuedCount = 0;
+    return bestGainSum;
+  }
+
+  /**
+   * Moves v to the other side and updates the costs of all of its neighbors,
+   * so costs stay exact whether the move is kept or undone. If inPass is
+   * true, unlocked neighbors are also added to or re-keyed in the buckets.
+   */
+  void moveVertex(int v, boolean inPass) {
+    boolean wasInA = partitionA.get(v);
+    partitionA.flip(v);
+    costs[v] = -costs[v];
+
+    for (int i = 0; i < graph.degree(v); i++) {
+      int u = graph.neighbor(v, i);
+      int weight = graph.neighborWeight(v, i);
+      costs[u] += (partitionA.get(u) == wasInA) ? 2*weight : -2*weight;
+      if (inPass && !locked.get(u)) {
+        GainBuckets buckets = partitionA.get(u) ? bucketsA : bucketsB;
+        if (buckets.contains(u)) {
+          buckets.update(u, costs[u]);
+        } else {
+          enqueue(u);
+        }
+      }
+    }
+  }
+
+  // Adds an unlocked vertex to the bucket list of its side
+  void enqueue(int u) {
+    GainBuckets buckets = partitionA.get(u) ? bucketsA : bucketsB;
+    if (locked.get(u) || buckets.contains(u)) {
+      return;
+    }
+    buckets.insert(u, costs[u]);
+    queued[queuedCount++] = u;
+  }
+
+  /**
+   * Makes sure the buckets, which are emptied after every pass, cover every
+   * vertex id and the current gain range
+   */
+  void prepareBuckets() {
+    if (bucketsA == null || bucketsA.next.length < graph.size()
+        || bucketsA.maxGain < bucketRange) {
+      int capacity = (bucketsA == null) ? graph.size() : bucketsA.next.length;
+      if (capacity < graph.size()) {
+        capacity = Math.max(graph.size(), 2 * capacity);
+      }
+      bucketsA = new GainBuckets(capacity, bucketRange);
+      bucketsB = new GainBuckets(capacity, bucketRange);
+      moves = new int[capacity];
+      queued = new int[capacity];
+    }
+  }
+
+  boolean isBalanced(long weight) {
+    return Math.abs(weight - totalWeight / 2) <= balanceTolerance;
+  }
+
+  boolean canMove(long newWeight, long weight) {
+    return KLEngine.canMove(newWeight, weight, totalWeight / 2, balanceTolerance);
+  }
+
+  boolean isBetterState(int gainSum, long weight, int bestGainSum, long bestWeight) {
+    return KLEngine.isBetterState(gainSum, weight, bestGainSum, bestWeight,
+                                  totalWeight / 2, balanceTolerance);
+  }
+
+  public void setBalanceTolerance(long balanceTolerance) {
+    this.balanceTolerance = balanceTolerance;
+  }
+
+  // Sets how many moves in a row may fail to improve the cut before a pass ends
+  public void setStallLimit(int stallLimit) {
+    this.stallLimit = stallLimit;
+  }
+
+  public void setMaxPasses(int maxPasses) {
+    this.maxPasses = maxPasses;
+  }
+
+  public BitSet getPartitionA() {
+    return (BitSet) partitionA.clone();
+  }
+
+  public boolean inPartitionA(int vertex) {
+    return partitionA.get(vertex);
+  }
+
+  public long cutWeight() {
+    return cutWeight;
+  }
+
+  public long getWeightA() {
+    return weightA;
+  }
+
+  public DynamicGraph getGraph() {
+    return graph;
+  }
+}
@@ -0,0 +1,763 @@
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Kernighan-Lin bisection over int vertex ids. Partition membership is kept
+ * in a BitSet (a set bit means the vertex is in partition A) and the cost of
+ * every vertex is kept in a primitive int[] indexed by vertex id, so no step
+ * of a pass has to search for a vertex.
+ *
+ * Balance is measured in vertex weight: partition A should weigh
+ * targetWeightA, give or take balanceTolerance. With the default unit vertex
+ * weights that is n/2 vertices, give or take one.
+ *
+ * When given a ForkJoinPool (see setParallelism), Kernighan-Lin passes split
+ * the max-gain pair search and the cost updates across the pool. Pairs are
+ * ranked by gain and then by vertex id, so the parallel search picks exactly
+ * the pair the sequential one would and both modes give the same partition.
+ */
+public class KLEngine implements AutoCloseable {
+  // Below these sizes the work is done on the calling thread
+  static final int PARALLEL_PAIR_THRESHOLD = 1 << 14;
+  static final int PARALLEL_DEGREE_THRESHOLD = 1 << 12;
+  // An FM pass checks the deadline once per this many moves
+  static final int DEADLINE_CHECK_MOVES = 256;
+
+  Graph graph;
+  BitSet partitionA;
+  BitSet locked;
+  int[] costs;
+
+  // Unlocked vertices of each partition during a pass. Removal swaps the
+  // last entry into the removed slot, so these are unordered.
+  int[] freeA, freeB;
+  int freeACount, freeBCount;
+
+  // The pairs set aside during a pass, in the order they were chosen
+  int[] aPrimes, bPrimes, gains;
+  int swapCount;
+
+  // The weight of partition A at the start of the current pass
+  long weightA;
+  long totalWeight;
+  long targetWeightA;
+  long balanceTolerance;
+
+  // State for Fiduccia-Mattheyses passes, see fmPartition
+  GainBuckets bucketsA, bucketsB;
+  int[] moves;
+  int moveCount;
+  int stallLimit;
+
+  // Pool for parallel Kernighan-Lin passes, or null to run sequentially
+  ForkJoinPool pool;
+  // Whether pool was made by setParallelism rather than given to setPool
+  boolean ownsPool;
+
+  // The System.nanoTime() at which passes stop early, see setDeadline
+  long deadline;
+  boolean outOfTime;
+
+  // Instrumentation, see runPass. trackedCut is -1 until it is first needed.
+  PassListener listener;
+  int passNumber;
+  long trackedCut;
+  int lastK;
+
+  public KLEngine(Graph graph) {
+    this.graph = graph;
+    this.partitionA = new BitSet(graph.size());
+    this.locked = new BitSet(graph.size());
+    this.costs = new int[graph.size()];
+    this.freeA = new int[graph.size()];
+    this.freeB = new int[graph.size()];
+    this.aPrimes = new int[graph.size()];
+    this.bPrimes = new int[graph.size()];
+    this.gains = new int[graph.size()];
+
+    int maxVertexWeight = 0;
+    for (int u = 0; u < graph.size(); u++) {
+      totalWeight += graph.vertexWeight(u);
+      maxVertexWeight = Math.max(maxVertexWeight, graph.vertexWeight(u));
+    }
+    this.targetWeightA = totalWeight / 2;
+    this.balanceTolerance = Math.max(1, maxVertexWeight);
+    this.stallLimit = Integer.MAX_VALUE;
+    this.trackedCut = -1;
+    this.deadline = Long.MAX_VALUE;
+  }
+
+  /**
+   * Partitions the graph into two even partitions using the Kernighan-Lin
+   * partitioning algorithm. If no starting partition has been set, the first
+   * n/2 vertices start in partition A and the rest in partition B.
+   */
+  public void partition() {
+    if (partitionA.isEmpty()) {
+      initializePartitions();
+    }
+    passNumber = 0;
+    trackedCut = -1;
+    outOfTime = false;
+    boolean wasBalanced;
+    int totalGain;
+    do {
+      wasBalanced = isBalanced(weightOf(partitionA));
+      totalGain = runPass(false);
+    } while (!outOfTime && keepRefining(totalGain, wasBalanced));
+  }
+
+  /**
+   * Runs one Kernighan-Lin pass, or one Fiduccia-Mattheyses pass if fm is
+   * true, and returns its total gain. If a listener is set or the PassEvent
+   * JFR event is enabled, the pass is timed and its statistics are reported
+   * to both; otherwise this is just the pass.
+   */
+  int runPass(boolean fm) {
+    PassEvent event = new PassEvent();
+    if (listener == null && !event.isEnabled()) {
+      return fm ? fmPass() : pass();
+    }
+
+    // The cut is computed once, then kept up to date from pass gains
+    if (trackedCut < 0) {
+      trackedCut = cutWeight();
+    }
+    long cutBefore = trackedCut;
+    event.begin();
+    long start = System.nanoTime();
+    int totalGain = fm ? fmPass() : pass();
+    long elapsed = System.nanoTime() - start;
+    event.end();
+    trackedCut -= totalGain;
+
+    PassStats stats = new PassStats();
+    stats.mode = fm ? "FM" : "KL";
+    stats.pass = ++passNumber;
+    stats.steps = fm ? moveCount : swapCount;
+    stats.k = lastK;
+    stats.totalGain = totalGain;
+    stats.cutBefore = cutBefore;
+    stats.cutAfter = trackedCut;
+    stats.elapsedNanos = elapsed;
+    stats.verticesLocked = fm ? moveCount : 2*swapCount;
+    if (stats.steps > 0) {
+      stats.gainMin = Integer.MAX_VALUE;
+      stats.gainMax = Integer.MIN_VALUE;
+      for (int i = 0; i < stats.steps; i++) {
+        stats.gainMin = Math.min(stats.gainMin, gains[i]);
+        stats.gainMax = Math.max(stats.gainMax, gains[i]);
+        stats.gainSum += gains[i];
+      }
+    }
+
+    if (event.shouldCommit()) {
+      event.mode = stats.mode;
+      event.pass = stats.pass;
+      event.steps = stats.steps;
+      event.gainMin = stats.gainMin;
+      event.gainMax = stats.gainMax;
+      event.k = stats.k;
+      event.totalGain = stats.totalGain;
+      event.cutBefore = stats.cutBefore;
+      event.cutAfter = stats.cutAfter;
+      event.verticesLocked = stats.verticesLocked;
+      event.commit();
+    }
+    if (listener != null) {
+      listener.passCompleted(stats);
+    }
+    return totalGain;
+  }
+
+  // returns true if another pass should follow one with the given total gain
+  boolean keepRefining(int totalGain, boolean wasBalanced) {
+    // A pass that brings the partition into balance may have lost gain to do
+    // so, but the passes after it can still improve the cut
+    return totalGain > 0 || (!wasBalanced && isBalanced(weightOf(partitionA)));
+  }
+
+  /**
+   * Puts vertices into partition A in id order until it reaches its target
+   * weight, and the rest into partition B. With unit weights, that is the
+   * first n/2 vertices.
+   */
+  public void initializePartitions() {
+    trackedCut = -1;
+    partitionA.clear();
+    long weight = 0;
+    for (int u = 0; u < graph.size() && weight < targetWeightA; u++) {
+      partitionA.set(u);
+      weight += graph.vertexWeight(u);
+    }
+  }
+
+  // Uses the given set of vertices as partition A and the rest as partition B
+  public void setPartitionA(BitSet partitionA) {
+    this.trackedCut = -1;
+    this.partitionA = (BitSet) partitionA.clone();
+    this.partitionA.clear(graph.size(), Math.max(graph.size(), this.partitionA.length()));
+  }
+
+  /**
+   * Runs a single Kernighan-Lin pass: pairs are set aside by maximum gain
+   * until one side runs out, then the prefix of swaps with the largest total
+   * gain is applied. Returns the total gain of the applied swaps, which is
+   * the amount the cut weight went down by, or 0 if nothing was swapped.
+   */
+  public int pass() {
+    calculateCosts();
+
+    int pairs = Math.min(freeACount, freeBCount);
+    for (int i = 0; i < pairs; i++) {
+      // Past the deadline, apply the best prefix of the pairs set aside so far
+      if (deadline != Long.MAX_VALUE && System.nanoTime() >= deadline) {
+        outOfTime = true;
+        break;
+      }
+      setAsideMaxGainPoints();
+      updateCosts();
+    }
+
+    int k = numberToMaximizeTotalGain();
+    lastK = k;
+    swapFirstKValues(k);
+    return gainSumForFirstKValues(k);
+  }
+
+  /**
+   * Calculates the cost of every vertex, which is its external cost (the
+   * weight of its edges into the other partition) minus its internal cost
+   * (the weight of its edges within its own partition). This also unlocks
+   * every vertex and resets the set-aside pairs for a new pass.
+   */
+  public void calculateCosts() {
+    locked.clear();
+    swapCount = 0;
+    freeACount = 0;
+    freeBCount = 0;
+    weightA = 0;
+
+    for (int u = 0; u < graph.size(); u++) {
+      boolean inA = partitionA.get(u);
+      int cost = 0;
+      for (int i = 0; i < graph.degree(u); i++) {
+        int v = graph.neighbor(u, i);
+        if (v != u) {
+          int weight = graph.neighborWeight(u, i);
+          cost += (partitionA.get(v) == inA) ? -weight : weight;
+        }
+      }
+      costs[u] = cost;
+
+      if (inA) {
+        freeA[freeACount++] = u;
+        weightA += graph.vertexWeight(u);
+      } else {
+        freeB[freeBCount++] = u;
+      }
+    }
+  }
+
+  /**
+   * Finds the unlocked pair of a from partition A and b from partition B
+   * which maximizes the gain calculation, locks both vertices and records
+   * the pair and its gain. Ties are broken by the lowest vertex id of a and
+   * then of b, so the choice does not depend on the order of the free lists.
+   */
+  public void setAsideMaxGainPoints() {
+    int[] best;
+    if (pool != null && (long) freeACount * freeBCount >= PARALLEL_PAIR_THRESHOLD) {
+      best = pool.invoke(new MaxGainSearch(0, freeACount));
+    } else {
+      best = searchMaxGain(0, freeACount);
+    }
+    setAside(best[1], best[2], best[0]);
+  }
+
+  /**
+   * Searches the pairs whose a is freeA[fromI] to freeA[toI - 1] for the one
+   * of maximum gain. Returns {gain, i, j} for the pair freeA[i], freeB[j].
+   */
+  int[] searchMaxGain(int fromI, int toI) {
+    int bestI = fromI;
+    int bestJ = 0;
+    int maxGain = calculateGain(freeA[fromI], freeB[0]);
+
+    for (int i = fromI; i < toI; i++) {
+      int a = freeA[i];
+      for (int j = 0; j < freeBCount; j++) {
+        int b = freeB[j];
+        int gain = calculateGain(a, b);
+
+        if (isBetterPair(gain, a, b, maxGain, freeA[bestI], freeB[bestJ])) {
+          maxGain = gain;
+          bestI = i;
+          bestJ = j;
+        }
+      }
+    }
+
+    return new int[] {maxGain, bestI, bestJ};
+  }
+
+  // Splits the max-gain search over ranges of freeA and keeps the better half's pair
+  @SuppressWarnings("serial")
+  class MaxGainSearch extends RecursiveTask<int[]> {
+    int fromI, toI;
+
+    MaxGainSearch(int fromI, int toI) {
+      this.fromI = fromI;
+      this.toI = toI;
+    }
+
+    protected int[] compute() {
+      if ((long) (toI - fromI) * freeBCount < PARALLEL_PAIR_THRESHOLD || toI - fromI < 2) {
+        return searchMaxGain(fromI, toI);
+      }
+      int middle = (fromI + toI) >>> 1;
+      MaxGainSearch left = new MaxGainSearch(fromI, middle);
+      left.fork();
+      int[] right = new MaxGainSearch(middle, toI).compute();
+      int[] best = left.join();
+
+      if (isBetterPair(right[0], freeA[right[1]], freeB[right[2]],
+                       best[0], freeA[best[1]], freeB[best[2]])) {
+        best = right;
+      }
+      return best;
+    }
+  }
+
+  // returns true if the pair (a, b) with the given gain should replace the current best pair
+  static boolean isBetterPair(int gain, int a, int b, int maxGain, int bestA, int bestB) {
+    if (gain != maxGain) {
+      return gain > maxGain;
+    }
+    return a < bestA || (a == bestA && b < bestB);
+  }
+
+  // Locks freeA[i] and freeB[j] and records them as the next set-aside pair
+  void setAside(int i, int j, int gain) {
+    int a = freeA[i];
+    int b = freeB[j];
+
+    aPrimes[swapCount] = a;
+    bPrimes[swapCount] = b;
+    gains[swapCount] = gain;
+    swapCount++;
+
+    locked.set(a);
+    locked.set(b);
+    freeA[i] = freeA[--freeACount];
+    freeB[j] = freeB[--freeBCount];
+  }
+
+  public int calculateGain(int a, int b) {
+    return costs[a] + costs[b] - 2*graph.weight(a, b);
+  }
+
+  /**
+   * Updates the costs of the unlocked neighbors of the most recently set
+   * aside pair. Only neighbors of the pair can change, so this walks their
+   * adjacency rows rather than the remaining vertices.
+   */
+  public void updateCosts() {
+    int aPrime = aPrimes[swapCount - 1];
+    int bPrime = bPrimes[swapCount - 1];
+
+    // Moving aPrime to B makes its A neighbors more external and its B neighbors less
+    updateNeighborCosts(aPrime, true);
+    // Moving bPrime to A makes its B neighbors more external and its A neighbors less
+    updateNeighborCosts(bPrime, false);
+  }
+
+  // Updates the costs of the unlocked neighbors of a vertex leaving partition A (or B)
+  void updateNeighborCosts(int moved, boolean leavingA) {
+    int degree = graph.degree(moved);
+    if (pool != null && degree >= PARALLEL_DEGREE_THRESHOLD) {
+      pool.invoke(new CostUpdate(moved, leavingA, 0, degree));
+    } else {
+      updateNeighborCosts(moved, leavingA, 0, degree);
+    }
+  }
+
+  // Updates the costs of the neighbors in slots fromSlot to toSlot - 1 of moved
+  void updateNeighborCosts(int moved, boolean leavingA, int fromSlot, int toSlot) {
+    for (int i = fromSlot; i < toSlot; i++) {
+      int v = graph.neighbor(moved, i);
+      if (!locked.get(v)) {
+        int weight = graph.neighborWeight(moved, i);
+        costs[v] += (partitionA.get(v) == leavingA) ? 2*weight : -2*weight;
+      }
+    }
+  }
+
+  // Splits a cost update over ranges of neighbor slots, which hold distinct vertices
+  @SuppressWarnings("serial")
+  class CostUpdate extends RecursiveAction {
+    int moved;
+    boolean leavingA;
+    int fromSlot, toSlot;
+
+    CostUpdate(int moved, boolean leavingA, int fromSlot, int toSlot) {
+      this.moved = moved;
+      this.leavingA = leavingA;
+      this.fromSlot = fromSlot;
+      this.toSlot = toSlot;
+    }
+
+    protected void compute() {
+      if (toSlot - fromSlot < PARALLEL_DEGREE_THRESHOLD) {
+        updateNeighborCosts(moved, leavingA, fromSlot, toSlot);
+        return;
+      }
+      int middle = (fromSlot + toSlot) >>> 1;
+      invokeAll(new CostUpdate(moved, leavingA, fromSlot, middle),
+                new CostUpdate(moved, leavingA, middle, toSlot));
+    }
+  }
+
+  /**
+   * Returns the number k such that the sum of the first k gain values is
+   * maximized, or 0 if no prefix has a positive sum. Only prefixes that
+   * leave partition A within the balance tolerance are considered, unless
+   * the pass started out of balance, in which case the prefix that does the
+   * most to restore balance wins.
+   */
+  public int numberToMaximizeTotalGain() {
+    int k = 0;
+    int maxTotalGain = 0;
+    long bestWeightA = weightA;
+    int currentGainSum = 0;
+    long currentWeightA = weightA;
+
+    for (int i = 0; i < swapCount; i++) {
+      currentGainSum += gains[i];
+      currentWeightA += graph.vertexWeight(bPrimes[i]) - graph.vertexWeight(aPrimes[i]);
+      if (isBetterState(currentGainSum, currentWeightA, maxTotalGain, bestWeightA)) {
+        maxTotalGain = currentGainSum;
+        bestWeightA = currentWeightA;
+        k = i + 1;
+      }
+    }
+
+    return k;
+  }
+
+  /**
+   * Returns true if a partition whose A side weighs weight, reached with the
+   * given total gain, is preferable to the best one found so far. Being in
+   * balance comes first, then being closer to balance, then gain.
+   */
+  boolean isBetterState(int gainSum, long weight, int bestGainSum, long bestWeight) {
+    return isBetterState(gainSum, weight, bestGainSum, bestWeight, targetWeightA, balanceTolerance);
+  }
+
+  static boolean isBetterState(int gainSum, long weight, int bestGainSum, long bestWeight,
+                               long targetWeight, long tolerance) {
+    long imbalance = Math.abs(weight - targetWeight);
+    long bestImbalance = Math.abs(bestWeight - targetWeight);
+    boolean balanced = imbalance <= tolerance;
+    boolean bestBalanced = bestImbalance <= tolerance;
+
+    if (balanced != bestBalanced) {
+      return balanced;
+    }
+    if (!balanced && imbalance != bestImbalance) {
+      return imbalance < bestImbalance;
+    }
+    return gainSum > bestGainSum;
+  }
+
+  public int gainSumForFirstKValues(int k) {
+    int gainSum = 0;
+    for (int i = 0; i < k; i++) {
+      gainSum += gains[i];
+    }
+    return gainSum;
+  }
+
+  // Swaps the first k set-aside pairs between partitions A and B
+  public void swapFirstKValues(int k) {
+    for (int i = 0; i < k; i++) {
+      partitionA.clear(aPrimes[i]);
+      partitionA.set(bPrimes[i]);
+    }
+  }
+
+  /**
+   * Refines the partition with Fiduccia-Mattheyses passes until a pass can no
+   * longer improve the cut. Rather than swapping pairs, FM moves one vertex
+   * at a time, always a vertex of highest gain whose move keeps the weight
+   * of partition A within balanceTolerance of targetWeightA. Gains are kept
+   * in bucket lists, so a pass takes time close to linear in the number of
+   * edges.
+   */
+  public void fmPartition() {
+    if (partitionA.isEmpty()) {
+      initializePartitions();
+    }
+    passNumber = 0;
+    trackedCut = -1;
+    outOfTime = false;
+    boolean wasBalanced;
+    int totalGain;
+    do {
+      wasBalanced = isBalanced(weightOf(partitionA));
+      totalGain = runPass(true);
+    } while (!outOfTime && keepRefining(totalGain, wasBalanced));
+  }
+
+  /**
+   * Runs a single Fiduccia-Mattheyses pass. Every vertex is moved at most
+   * once, then the moves after the best prefix (as chosen by isBetterState)
+   * are undone. The pass ends early once stallLimit moves in a row have not
+   * improved on the best prefix. The gain of each move is recorded in gains.
+   * Returns the total gain of the kept moves, which is the amount the cut
+   * weight went down by, or 0 if the partition was left unchanged.
+   */
+  public int fmPass() {
+    calculateCosts();
+    initializeBuckets();
+
+    long currentWeightA = weightA;
+    long bestWeightA = weightA;
+    int gainSum = 0;
+    int bestGainSum = 0;
+    int bestMoveCount = 0;
+    moveCount = 0;
+
+    while (moveCount - bestMoveCount < stallLimit) {
+      if (deadline != Long.MAX_VALUE && moveCount % DEADLINE_CHECK_MOVES == 0 &&
+          System.nanoTime() >= deadline) {
+        outOfTime = true;
+        break;
+      }
+      int fromA = bucketsA.peekMax();
+      int fromB = bucketsB.peekMax();
+      if (fromA != -1 && !canMove(currentWeightA - graph.vertexWeight(fromA), currentWeightA)) {
+        fromA = -1;
+      }
+      if (fromB != -1 && !canMove(currentWeightA + graph.vertexWeight(fromB), currentWeightA)) {
+        fromB = -1;
+      }
+      if (fromA == -1 && fromB == -1) {
+        break;
+      }
+
+      // Move the vertex of higher gain, preferring the larger side on ties
+      int v;
+      if (fromB == -1) {
+        v = fromA;
+      } else if (fromA == -1) {
+        v = fromB;
+      } else if (costs[fromA] != costs[fromB]) {
+        v = (costs[fromA] > costs[fromB]) ? fromA : fromB;
+      } else {
+        v = (currentWeightA >= targetWeightA) ? fromA : fromB;
+      }
+
+      gains[moveCount] = costs[v];
+      gainSum += costs[v];
+      currentWeightA += partitionA.get(v) ? -graph.vertexWeight(v) : graph.vertexWeight(v);
+      moveVertex(v);
+
+      if (isBetterState(gainSum, currentWeightA, bestGainSum, bestWeightA)) {
+        bestGainSum = gainSum;
+        bestWeightA = currentWeightA;
+        bestMoveCount = moveCount;
+      }
+    }
+
+    // Undo the moves past the best prefix
+    for (int i = moveCount - 1; i >= bestMoveCount; i--) {
+      partitionA.flip(moves[i]);
+    }
+    lastK = bestMoveCount;
+    return bestGainSum;
+  }
+
+  public void setBalanceTolerance(long balanceTolerance) {
+    this.balanceTolerance = balanceTolerance;
+  }
+
+  /**
+   * Sets the number of threads used by Kernighan-Lin passes. A parallelism
+   * of 1 runs passes on the calling thread.
+   */
+  public void setParallelism(int parallelism) {
+    close();
+    pool = (parallelism > 1) ? new ForkJoinPool(parallelism) : null;
+    ownsPool = (pool != null);
+  }
+
+  // Runs Kernighan-Lin passes on a shared pool, or sequentially if pool is null
+  public void setPool(ForkJoinPool pool) {
+    close();
+    this.pool = pool;
+  }
+
+  /**
+   * Shuts down the pool made by setParallelism, if any, and goes back to
+   * running sequentially. A pool given to setPool is left running.
+   */
+  @Override
+  public void close() {
+    if (ownsPool) {
+      pool.shutdown();
+      pool = null;
+      ownsPool = false;
+    }
+  }
+
+  /**
+   * Stops passes early once System.nanoTime() reaches deadline. A Kernighan-Lin
+   * pass then sets aside no more pairs and an FM pass makes no more moves
+   * (it checks every DEADLINE_CHECK_MOVES moves), and the best prefix of
+   * what the pass did is kept, so the partition is as valid as after a full
+   * pass. Long.MAX_VALUE, the default, means no deadline.
+   */
+  public void setDeadline(long deadline) {
+    this.deadline = deadline;
+  }
+
+  // returns true if a pass of the last partition or fmPartition call stopped at the deadline
+  public boolean isOutOfTime() {
+    return outOfTime;
+  }
+
+  // Reports the statistics of every pass to the listener; null turns reporting off
+  public void setPassListener(PassListener listener) {
+    this.listener = listener;
+  }
+
+  // Sets how many moves in a row may fail to improve the cut before an FM pass ends
+  public void setStallLimit(int stallLimit) {
+    this.stallLimit = stallLimit;
+  }
+
+  // Sets the weight partition A should have, for splits other than even halves
+  public void setTargetWeightA(long targetWeightA) {
+    this.targetWeightA = targetWeightA;
+  }
+
+  // returns true if partition A may go from weight to newWeight under the balance constraint
+  boolean canMove(long newWeight, long weight) {
+    return canMove(newWeight, weight, targetWeightA, balanceTolerance);
+  }
+
+  static boolean canMove(long newWeight, long weight, long targetWeight, long tolerance) {
+    long newImbalance = Math.abs(newWeight - targetWeight);
+    return newImbalance <= tolerance || newImbalance < Math.abs(weight - targetWeight);
+  }
+
+  boolean isBalanced(long weight) {
+    return imbalanceOf(weight) <= balanceTolerance;
+  }
+
+  long imbalanceOf(long weight) {
+    return Math.abs(weight - targetWeightA);
+  }
+
+  // returns the total vertex weight of the given set of vertices
+  long weightOf(BitSet vertices) {
+    long weight = 0;
+    for (int u = vertices.nextSetBit(0); u >= 0; u = vertices.nextSetBit(u + 1)) {
+      weight += graph.vertexWeight(u);
+    }
+    return weight;
+  }
+
+  // Puts every vertex into the bucket list of its side, keyed by its cost
+  void initializeBuckets() {
+    if (bucketsA == null) {
+      int maxGain = (int) Math.min(maxWeightedDegree(), GainBuckets.MAX_RANGE);
+      bucketsA = new GainBuckets(graph.size(), maxGain);
+      bucketsB = new GainBuckets(graph.size(), maxGain);
+      moves = new int[graph.size()];
+    } else {
+      bucketsA.clear();
+      bucketsB.clear();
+    }
+
+    for (int i = 0; i < freeACount; i++) {
+      bucketsA.insert(freeA[i], costs[freeA[i]]);
+    }
+    for (int i = 0; i < freeBCount; i++) {
+      bucketsB.insert(freeB[i], costs[freeB[i]]);
+    }
+  }
+
+  /**
+   * returns the largest total edge weight of any vertex, which bounds every
+   * gain. The buckets cap it at GainBuckets.MAX_RANGE.
+   */
+  long maxWeightedDegree() {
+    long max = 0;
+    for (int u = 0; u < graph.size(); u++) {
+      long total = 0;
+      for (int i = 0; i < graph.degree(u); i++) {
+        if (graph.neighbor(u, i) != u) {
+          total += Math.abs(graph.neighborWeight(u, i));
+        }
+      }
+      max = Math.max(max, total);
+    }
+    return max;
+  }
+
+  /**
+   * Moves vertex v to the other partition, locks it and updates the gains of
+   * its unlocked neighbors. A neighbor that was on v's old side gains 2w from
+   * the move and a neighbor on v's new side loses 2w.
+   */
+  void moveVertex(int v) {
+    boolean wasInA = partitionA.get(v);
+    (wasInA ? bucketsA : bucketsB).remove(v);
+    partitionA.flip(v);
+    locked.set(v);
+    moves[moveCount++] = v;
+
+    for (int i = 0; i < graph.degree(v); i++) {
+      int u = graph.neighbor(v, i);
+      if (u != v && !locked.get(u)) {
+        int weight = graph.neighborWeight(v, i);
+        boolean uInA = partitionA.get(u);
+        costs[u] += (uInA == wasInA) ? 2*weight : -2*weight;
+        (uInA ? bucketsA : bucketsB).update(u, costs[u]);
+      }
+    }
+  }
+
+  // returns the total weight of the edges between partition A and partition B
+  public long cutWeight() {
+    long cut = 0;
+    for (int u = partitionA.nextSetBit(0); u >= 0; u = partitionA.nextSetBit(u + 1)) {
+      for (int i = 0; i < graph.degree(u); i++) {
+        if (!partitionA.get(graph.neighbor(u, i))) {
+          cut += graph.neighborWeight(u, i);
+        }
+      }
+    }
+    return cut;
+  }
+
+  public boolean inPartitionA(int vertex) {
+    return partitionA.get(vertex);
+  }
+
+  public long getWeightA() {
+    return weightOf(partitionA);
+  }
+
+  public BitSet getPartitionA() {
+    return (BitSet) partitionA.clone();
+  }
+
+  public Graph getGraph() {
+    return graph;
+  }
+}
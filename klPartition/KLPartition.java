@@ -1,14 +1,20 @@
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 
+/**
+ * String-labelled front end to KLEngine. Points are mapped to their index in
+ * the points list once, the adjacency matrix is copied into a DenseGraph,
+ * and the engine's result is turned back into lists of point labels.
+ */
 public class KLPartition {
   List<String> points;
   Integer[][] adjacencyMatrix;
-  ArrayList<String> partitionA, partitionB, aPrimeList, bPrimeList;
-  ArrayList<Integer> gainList;
-  Integer[] costs;
+  ArrayList<String> partitionA, partitionB;
+  HashMap<String,Integer> pointIndex;
+  KLEngine engine;
 
   public static void main(String[] args) {
     Integer[][] testMatrix = new Integer[6][6];
@@ -30,212 +36,88 @@ public class KLPartition {
     this.adjacencyMatrix = adjacencyMatrix;
     this.partitionA = new ArrayList<String>();
     this.partitionB = new ArrayList<String>();
-    this.aPrimeList = new ArrayList<String>();
-    this.bPrimeList = new ArrayList<String>();
-    this.gainList = new ArrayList<Integer>();
-    this.costs = new Integer[adjacencyMatrix.length];
+    this.pointIndex = new HashMap<String,Integer>();
+    for (int i = 0; i < points.size(); i++) {
+      pointIndex.put(points.get(i), i);
+    }
+    this.engine = new KLEngine(DenseGraph.fromMatrix(adjacencyMatrix));
   }
 
   /**
    * Partitions a graph into two even partitions using the Kernighan-Lin
    * partitioning algorithm. The partitions are stored in the partitionA and
-   * partitionB variables of the calling KLPartition object.
+   * partitionB variables of the calling KLPartition object. If partitionA
+   * already holds points, they are used as the starting partition.
    */
   public void partition() {
-    int totalGain = 1;
-    int k = 0;
-    do {
-      initializePartitions();
-      calculateCosts();
-
-      for (int i = 0; i < adjacencyMatrix.length/2; i++) {
-        setAsideMaxGainPoints();
-        updateCosts();
-      }
-
-      k = numberToMaximizeTotalGain();
-      totalGain = gainSumForFirstKValues(k);
-
-      if (totalGain > 0) {
-        swapFirstKValues(k);
-      } else {
-        swapFirstKValues(0);
-      }
-
-    } while (totalGain > 0);
+    if (!partitionA.isEmpty()) {
+      engine.setPartitionA(toBitSet(partitionA));
+    }
+    engine.partition();
+    readPartitions();
   }
 
   /**
-   * Initializes the values of the partitions. If partition A and partition B
-   * are not empty, then this is not the first iteration, so we keep the
-   * existing partitions as our starting partitions. The other lists and the
-   * cost array are wiped clean at the beginning of each iteration.
+   * Partitions the graph with Fiduccia-Mattheyses refinement instead of
+   * Kernighan-Lin pair swaps. The sizes of the two partitions may differ by
+   * up to the engine's balance tolerance.
    */
-  public void initializePartitions() {
-    if (partitionA.isEmpty() || partitionB.isEmpty()) {
-      // Add the first n/2 points to partition A
-      for (int i = 0; i < adjacencyMatrix.length/2; i++) {
-        partitionA.add(points.get(i));
-      }
-      // Add the second n/2 points to partition B
-      for (int i = adjacencyMatrix.length/2; i < adjacencyMatrix.length; i++) {
-        partitionB.add(points.get(i));
-      }
+  public void fmPartition() {
+    if (!partitionA.isEmpty()) {
+      engine.setPartitionA(toBitSet(partitionA));
     }
-
-    aPrimeList = new ArrayList<String>();
-    bPrimeList = new ArrayList<String>();
-    gainList = new ArrayList<Integer>();
-    costs = new Integer[adjacencyMatrix.length];
+    engine.fmPartition();
+    readPartitions();
   }
 
   /**
-   * Calculates the costs for each point in the graph. For a point s in the
-   * set, the cost of s is the difference of the external cost of s and the
-   * internal cost of s. The external cost is the sum of the costs of s in the
-   * other partition, and the internal cost is the sum of the costs of s within
-   * its own partition.
-   *
-   * The costs are stored in the costs array of the calling KLPartition object.
+   * Splits the points into k parts with a MultilevelPartitioner. Returns one
+   * list of point labels per part.
    */
-  public void calculateCosts() {
-    for (String aVal : partitionA) {
-      int externalCost = cost(aVal, partitionB);
-      int internalCost = cost(aVal, partitionA);
-
-      costs[points.indexOf(aVal)] = externalCost - internalCost;
+  public List<List<String>> partitionInto(int k) {
+    int[] parts = new MultilevelPartitioner().partition(engine.getGraph(), k);
+    List<List<String>> partLists = new ArrayList<List<String>>();
+    for (int i = 0; i < k; i++) {
+      partLists.add(new ArrayList<String>());
     }
-
-    for (String bVal : partitionB) {
-      int externalCost = cost(bVal, partitionA);
-      int internalCost = cost(bVal, partitionB);
-
-      costs[points.indexOf(bVal)] = externalCost - internalCost;
+    for (int i = 0; i < points.size(); i++) {
+      partLists.get(parts[i]).add(points.get(i));
     }
+    return partLists;
   }
 
-  public int cost(String point, ArrayList<String> partition) {
-    int cost = 0;
-    int pointIndex = points.indexOf(point);
-
-    for (String partitionVal : partition) {
-      int partitionValIndex = points.indexOf(partitionVal);
-
-      cost += adjacencyMatrix[pointIndex][partitionValIndex];
+  // returns the set of point indices for the given list of point labels
+  BitSet toBitSet(List<String> partition) {
+    BitSet bits = new BitSet(points.size());
+    for (String point : partition) {
+      bits.set(pointIndex.get(point));
     }
-
-    return cost;
+    return bits;
   }
 
-  /**
-   * Finds the pair of a from partition A and b from partition B which
-   * maximizes the gain calculation. For such a pair, a is moved from partition A
-   * to aPrimeList and b is likewise moved from paritition B to bPrimeList so
-   * they will not be considered again in later iterations. The gain value
-   * for the pair is appended to gainList.
-   */
-  public void setAsideMaxGainPoints() {
-    String aPrime = partitionA.get(0);
-    String bPrime = partitionB.get(0);
-    Integer maxGain = calculateGain(partitionA.get(0), partitionB.get(0));
-
-    for (String aVal : partitionA) {
-      for (String bVal : partitionB) {
-        int gain = calculateGain(aVal, bVal);
-
-        if (gain > maxGain) {
-          maxGain = gain;
-          aPrime = aVal;
-          bPrime = bVal;
-        }
+  // Copies the engine's partition back into the partitionA and partitionB lists
+  void readPartitions() {
+    partitionA.clear();
+    partitionB.clear();
+    for (int i = 0; i < points.size(); i++) {
+      if (engine.inPartitionA(i)) {
+        partitionA.add(points.get(i));
+      } else {
+        partitionB.add(points.get(i));
       }
     }
-
-    gainList.add(maxGain);
-
-    aPrimeList.add(aPrime);
-    partitionA.remove(aPrime);
-
-    bPrimeList.add(bPrime);
-    partitionB.remove(bPrime);
   }
 
-  public int calculateGain(String pointA, String pointB) {
-    int a = points.indexOf(pointA);
-    int b = points.indexOf(pointB);
-
-    return costs[a] + costs[b] - 2*adjacencyMatrix[a][b];
+  public void setPassListener(PassListener listener) {
+    engine.setPassListener(listener);
   }
 
-  /**
-   * Updates the costs array for the remaining values in partitions A and B
-   * using the most recently added values to aPrimeList and bPrimeList
-   */
-  public void updateCosts() {
-    // Get the most recent values of aPrime and bPrime
-    String aPrime = aPrimeList.get(aPrimeList.size() - 1);
-    String bPrime = bPrimeList.get(bPrimeList.size() - 1);
-
-    int aPrimeIndex = points.indexOf(aPrime);
-    int bPrimeIndex = points.indexOf(bPrime);
-
-    for (String aVal : partitionA) {
-      int aValIndex = points.indexOf(aVal);
-      costs[aValIndex] += 2*adjacencyMatrix[aValIndex][aPrimeIndex] -
-                          2*adjacencyMatrix[aValIndex][bPrimeIndex];
-    }
-
-    for (String bVal : partitionB) {
-      int bValIndex = points.indexOf(bVal);
-      costs[bValIndex] += 2*adjacencyMatrix[bValIndex][bPrimeIndex] -
-                          2*adjacencyMatrix[bValIndex][aPrimeIndex];
-    }
+  public long cutWeight() {
+    return engine.cutWeight();
   }
 
-  /**
-   * Returns the number k such that the sum of the first k gain values in
-   * gainList is maximized
-   */
-  public int numberToMaximizeTotalGain() {
-    int k = 0;
-    int maxTotalGain = gainList.get(0);
-    int currentGainSum = 0;
-
-    for (int i = 0; i < gainList.size(); i++) {
-      currentGainSum += gainList.get(i);
-      if (currentGainSum > maxTotalGain) {
-        k = i;
-      }
-    }
-
-    return k + 1;
-  }
-
-  /**
-   * Swaps the first k values between partitions A and B, namely the first k
-   * items in aPrimeList are sent to partition B and the first k items in
-   * bPrimeList are sent to partition A. The remaining items are returned to
-   * their original partition.
-   */
-  public void swapFirstKValues(int k) {
-    for (int i = 0; i < k; i++) {
-      partitionA.add(bPrimeList.remove(0));
-      partitionB.add(aPrimeList.remove(0));
-    }
-
-    partitionA.addAll(aPrimeList);
-    aPrimeList.clear();
-
-    partitionB.addAll(bPrimeList);
-    bPrimeList.clear();
-  }
-
-  public int gainSumForFirstKValues(int k) {
-    int gainSum = 0;
-    for (int i = 0; i < k; i++) {
-      gainSum += gainList.get(i);
-    }
-    return gainSum;
+  public KLEngine getEngine() {
+    return engine;
   }
 
   public void printPartitions() {
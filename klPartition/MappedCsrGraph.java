@@ -0,0 +1,64 @@
+import java.nio.IntBuffer;
+
+/**
+ * A Graph read straight from a memory-mapped binary graph file (see
+ * GraphLoader.writeBinary). It has the same layout as a CsrGraph, but the
+ * arrays are IntBuffer views of the mapped file, so opening a graph costs
+ * nothing beyond mapping it and pages are only read as they are touched.
+ */
+public class MappedCsrGraph implements Graph {
+  IntBuffer offsets;
+  IntBuffer targets;
+  IntBuffer weights;
+  IntBuffer vertexWeights;
+
+  public MappedCsrGraph(IntBuffer offsets, IntBuffer targets, IntBuffer weights,
+                        IntBuffer vertexWeights) {
+    this.offsets = offsets;
+    this.targets = targets;
+    this.weights = weights;
+    this.vertexWeights = vertexWeights;
+  }
+
+  public int size() {
+    return offsets.limit() - 1;
+  }
+
+  public int weight(int u, int v) {
+    // Rows are sorted by target, so binary search the row of u for v
+    int low = offsets.get(u);
+    int high = offsets.get(u + 1) - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int target = targets.get(middle);
+      if (target < v) {
+        low = middle + 1;
+      } else if (target > v) {
+        high = middle - 1;
+      } else {
+        return weights.get(middle);
+      }
+    }
+    return 0;
+  }
+
+  public int degree(int u) {
+    return offsets.get(u + 1) - offsets.get(u);
+  }
+
+  public int neighbor(int u, int i) {
+    return targets.get(offsets.get(u) + i);
+  }
+
+  public int neighborWeight(int u, int i) {
+    return weights.get(offsets.get(u) + i);
+  }
+
+  public int vertexWeight(int u) {
+    return (vertexWeights == null) ? 1 : vertexWeights.get(u);
+  }
+
+  public int edgeCount() {
+    return targets.limit() / 2;
+  }
+}
@@ -0,0 +1,243 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs Kernighan-Lin from many random starting bisections at once and keeps
+ * the best result, since the partition KL settles on depends heavily on
+ * where it starts.
+ *
+ * Runs are spread over a pool of worker threads. They all read the same
+ * Graph, and each has its own KLEngine for its partition and costs. Every
+ * run stops at the time or pass budget, and a run is cut off early when it
+ * is behind the best cut found so far and its last pass gained less than
+ * the difference, since pass gains shrink as KL converges and such a run is
+ * unlikely to catch up.
+ */
+public class MultiStartPartitioner {
+  public static final int COMPLETED = 0;
+  public static final int CUT_OFF = 1;
+  public static final int OUT_OF_TIME = 2;
+  public static final int PASS_LIMIT = 3;
+
+  Graph graph;
+  int runs;
+  int threads;
+  long timeBudgetNanos;
+  int passBudget;
+  long seed;
+  boolean fmRefinement;
+  PassListener listener;
+
+  public MultiStartPartitioner(Graph graph) {
+    this.graph = graph;
+    this.runs = 16;
+    this.threads = Runtime.getRuntime().availableProcessors();
+    this.timeBudgetNanos = 0;
+    this.passBudget = 0;
+    this.seed = 1;
+    this.fmRefinement = false;
+  }
+
+  // The statistics of a single run
+  public static class RunStats {
+    public int run;
+    public long seed;
+    public long initialCut;
+    public long finalCut;
+    public int passes;
+    public long elapsedNanos;
+    public int status;
+
+    public String toString() {
+      String[] statusNames = {"completed", "cut off", "out of time", "pass limit"};
+      return "Run " + run + " (seed " + seed + "): cut " + initialCut + " -> " + finalCut +
+             " in " + passes + " passes, " + (elapsedNanos / 1000000) + " ms, " +
+             statusNames[status];
+    }
+  }
+
+  /**
+   * The best partition found over all runs, along with every run's
+   * statistics. partitionA is null, and cutWeight Long.MAX_VALUE, only if no
+   * run ended with a balanced partition.
+   */
+  public static class Result {
+    public BitSet partitionA;
+    public long cutWeight;
+    public List<RunStats> runStats;
+  }
+
+  /**
+   * Runs up to the configured number of starts and returns the best balanced
+   * partition found. The time budget is checked within passes (see
+   * KLEngine.setDeadline), so runs end within one pair selection, or a few
+   * hundred FM moves, of the deadline. Runs other than the first that have
+   * not started when the time budget runs out are skipped and do not appear
+   * in the statistics. The first run always starts, so even a budget that
+   * has run out gives its random bisection.
+   */
+  public Result partition() {
+    final long deadline = (timeBudgetNanos > 0) ? System.nanoTime() + timeBudgetNanos : Long.MAX_VALUE;
+    final AtomicLong bestCut = new AtomicLong(Long.MAX_VALUE);
+    final Result result = new Result();
+    result.cutWeight = Long.MAX_VALUE;
+    result.runStats = new ArrayList<RunStats>();
+
+    ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+    try {
+      List<Future<RunStats>> futures = new ArrayList<Future<RunStats>>();
+      for (int i = 0; i < runs; i++) {
+        final int run = i;
+        futures.add(pool.submit(new Callable<RunStats>() {
+          public RunStats call() {
+            if (run > 0 && System.nanoTime() >= deadline) {
+              return null;
+            }
+            return run(run, seed + run, deadline, bestCut, result);
+          }
+        }));
+      }
+
+      for (Future<RunStats> future : futures) {
+        RunStats stats = future.get();
+        if (stats != null) {
+          result.runStats.add(stats);
+        }
+      }
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException ee) {
+      throw new RuntimeException("Partitioning run failed", ee.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+    return result;
+  }
+
+  // Runs KL from one random starting bisection, recording a new best result in result
+  RunStats run(int run, long runSeed, long deadline, AtomicLong bestCut, Result result) {
+    long start = System.nanoTime();
+    RunStats stats = new RunStats();
+    stats.run = run;
+    stats.seed = runSeed;
+
+    KLEngine engine = new KLEngine(graph);
+    engine.setPassListener(listener);
+    engine.setDeadline(deadline);
+    engine.setPartitionA(randomBisection(engine, new Random(runSeed)));
+    long cut = engine.cutWeight();
+    stats.initialCut = cut;
+    stats.status = COMPLETED;
+
+    while (true) {
+      if (passBudget > 0 && stats.passes >= passBudget) {
+        stats.status = PASS_LIMIT;
+        break;
+      }
+      if (System.nanoTime() >= deadline) {
+        stats.status = OUT_OF_TIME;
+        break;
+      }
+
+      int gain = engine.runPass(fmRefinement);
+      stats.passes++;
+      cut -= gain;
+      if (engine.isOutOfTime()) {
+        stats.status = OUT_OF_TIME;
+        break;
+      }
+      if (gain <= 0) {
+        break;
+      }
+      if (cut > bestCut.get() && gain < cut - bestCut.get()) {
+        stats.status = CUT_OFF;
+        break;
+      }
+    }
+
+    stats.finalCut = cut;
+    stats.elapsedNanos = System.nanoTime() - start;
+    if (engine.isBalanced(engine.getWeightA())) {
+      offer(result, bestCut, engine.getPartitionA(), cut);
+    }
+    return stats;
+  }
+
+  // Keeps the partition if it has the smallest cut so far
+  void offer(Result result, AtomicLong bestCut, BitSet partitionA, long cut) {
+    synchronized (result) {
+      if (cut < result.cutWeight) {
+        result.cutWeight = cut;
+        result.partitionA = partitionA;
+        bestCut.set(cut);
+      }
+    }
+  }
+
+  /**
+   * Returns a random bisection: vertices are shuffled and then added to
+   * partition A until it reaches the engine's target weight
+   */
+  BitSet randomBisection(KLEngine engine, Random random) {
+    int size = graph.size();
+    int[] order = new int[size];
+    for (int u = 0; u < size; u++) {
+      order[u] = u;
+    }
+    for (int i = size - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int swap = order[i];
+      order[i] = order[j];
+      order[j] = swap;
+    }
+
+    BitSet partitionA = new BitSet(size);
+    long weight = 0;
+    for (int i = 0; i < size && weight < engine.targetWeightA; i++) {
+      partitionA.set(order[i]);
+      weight += graph.vertexWeight(order[i]);
+    }
+    return partitionA;
+  }
+
+  public void setRuns(int runs) {
+    this.runs = runs;
+  }
+
+  public void setThreads(int threads) {
+    this.threads = threads;
+  }
+
+  // Sets a wall-clock budget for all runs together, or 0 for no limit
+  public void setTimeBudgetMillis(long millis) {
+    this.timeBudgetNanos = millis * 1000000;
+  }
+
+  // Sets the maximum number of passes of each run, or 0 for no limit
+  public void setPassBudget(int passBudget) {
+    this.passBudget = passBudget;
+  }
+
+  // Sets the seed of the first run; run i uses seed + i
+  public void setSeed(long seed) {
+    this.seed = seed;
+  }
+
+  // Reports every pass of every run to the listener, which may be called concurrently
+  public void setPassListener(PassListener listener) {
+    this.listener = listener;
+  }
+
+  // Uses Fiduccia-Mattheyses passes instead of Kernighan-Lin pair swaps
+  public void setFmRefinement(boolean fmRefinement) {
+    this.fmRefinement = fmRefinement;
+  }
+}
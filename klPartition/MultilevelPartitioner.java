@@ -0,0 +1,346 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Multilevel k-way graph partitioning by recursive bisection.
+ *
+ * Each bisection coarsens the graph by heavy-edge matching until it has at
+ * most coarsestSize vertices, partitions the coarsest graph with
+ * Kernighan-Lin from several grown starting regions, then projects the
+ * partition back up one level at a time, refining it at each level with
+ * Fiduccia-Mattheyses passes. Coarse vertices carry the total weight of the
+ * vertices they were made from, so balance is kept in terms of the original
+ * graph at every level.
+ *
+ * The allowed imbalance is shared out between the levels of recursion, so
+ * the final parts of a k-way partition are within roughly imbalance of
+ * their ideal weight rather than compounding it at every bisection.
+ */
+public class MultilevelPartitioner {
+  int coarsestSize;
+  int initialTries;
+  int stallLimit;
+  double imbalance;
+  Random random;
+
+  public MultilevelPartitioner() {
+    this.coarsestSize = 100;
+    this.initialTries = 4;
+    this.stallLimit = 1000;
+    this.imbalance = 0.03;
+    this.random = new Random(1);
+  }
+
+  /**
+   * Splits the graph into k parts. Returns an array holding the part,
+   * from 0 to k - 1, of each vertex.
+   */
+  public int[] partition(Graph graph, int k) {
+    if (k < 1) {
+      throw new IllegalArgumentException("Number of parts must be positive: " + k);
+    }
+    CsrGraph csr = CsrGraph.fromGraph(graph);
+    int[] parts = new int[csr.size()];
+    int[] vertices = new int[csr.size()];
+    for (int u = 0; u < vertices.length; u++) {
+      vertices[u] = u;
+    }
+    int depth = 32 - Integer.numberOfLeadingZeros(k - 1);
+    partition(csr, vertices, k, 0, parts, imbalance / Math.max(1, depth));
+    return parts;
+  }
+
+  /**
+   * Splits the graph into k parts numbered from firstPart, where vertex u of
+   * graph is vertex vertices[u] of the original graph. Part A of each
+   * bisection gets k/2 of the parts and a matching share of the weight, and
+   * may be off by bisectionImbalance as a fraction of the total weight.
+   */
+  void partition(CsrGraph graph, int[] vertices, int k, int firstPart, int[] parts,
+                 double bisectionImbalance) {
+    if (k == 1 || graph.size() == 0) {
+      for (int vertex : vertices) {
+        parts[vertex] = firstPart;
+      }
+      return;
+    }
+
+    int kA = k / 2;
+    long totalWeight = totalWeight(graph);
+    long targetWeightA = totalWeight * kA / k;
+    long tolerance = Math.max(1, (long) (bisectionImbalance * totalWeight));
+    BitSet partitionA = bisect(graph, targetWeightA, tolerance);
+
+    int[] verticesA = new int[partitionA.cardinality()];
+    int[] verticesB = new int[graph.size() - verticesA.length];
+    int[] localA = new int[verticesA.length];
+    int[] localB = new int[verticesB.length];
+    int a = 0;
+    int b = 0;
+    for (int u = 0; u < graph.size(); u++) {
+      if (partitionA.get(u)) {
+        localA[a] = u;
+        verticesA[a++] = vertices[u];
+      } else {
+        localB[b] = u;
+        verticesB[b++] = vertices[u];
+      }
+    }
+
+    partition(graph.inducedSubgraph(localA), verticesA, kA, firstPart, parts,
+              bisectionImbalance);
+    partition(graph.inducedSubgraph(localB), verticesB, k - kA, firstPart + kA, parts,
+              bisectionImbalance);
+  }
+
+  /**
+   * Bisects the graph so that partition A weighs close to targetWeightA,
+   * using the coarsen, partition and refine scheme described above
+   */
+  public BitSet bisect(CsrGraph graph, long targetWeightA) {
+    return bisect(graph, targetWeightA, Math.max(1, (long) (imbalance * totalWeight(graph))));
+  }
+
+  BitSet bisect(CsrGraph graph, long targetWeightA, long tolerance) {
+    // Coarsen until the graph is small or matching stops shrinking it
+    List<CsrGraph> levels = new ArrayList<CsrGraph>();
+    List<int[]> coarseMaps = new ArrayList<int[]>();
+    levels.add(graph);
+    CsrGraph current = graph;
+    while (current.size() > coarsestSize) {
+      int[] coarseOf = new int[current.size()];
+      int coarseSize = heavyEdgeMatching(current, coarseOf);
+      if (coarseSize > 0.95 * current.size()) {
+        break;
+      }
+      current = contract(current, coarseOf, coarseSize);
+      coarseMaps.add(coarseOf);
+      levels.add(current);
+    }
+
+    BitSet partitionA = initialPartition(current, targetWeightA, tolerance);
+
+    // Project the partition back through each level and refine it
+    for (int level = levels.size() - 2; level >= 0; level--) {
+      CsrGraph finer = levels.get(level);
+      int[] coarseOf = coarseMaps.get(level);
+      BitSet projected = new BitSet(finer.size());
+      for (int u = 0; u < finer.size(); u++) {
+        if (partitionA.get(coarseOf[u])) {
+          projected.set(u);
+        }
+      }
+
+      KLEngine engine = newEngine(finer, targetWeightA, tolerance);
+      engine.setStallLimit(stallLimit);
+      engine.setPartitionA(projected);
+      engine.fmPartition();
+      partitionA = engine.getPartitionA();
+    }
+    return partitionA;
+  }
+
+  /**
+   * Partitions the coarsest graph. Each try grows partition A outward from a
+   * random vertex until it reaches the target weight, then refines it with
+   * Kernighan-Lin and Fiduccia-Mattheyses passes. The balanced result with
+   * the smallest cut is kept.
+   */
+  BitSet initialPartition(CsrGraph graph, long targetWeightA, long tolerance) {
+    BitSet best = null;
+    long bestCut = Long.MAX_VALUE;
+    boolean bestBalanced = false;
+
+    for (int i = 0; i < initialTries; i++) {
+      KLEngine engine = newEngine(graph, targetWeightA, tolerance);
+      engine.setPartitionA(growRegion(graph, random.nextInt(graph.size()), targetWeightA));
+      engine.partition();
+      engine.fmPartition();
+
+      long cut = engine.cutWeight();
+      boolean balanced = engine.isBalanced(engine.getWeightA());
+      if (best == null || (balanced && !bestBalanced) || (balanced == bestBalanced && cut < bestCut)) {
+        best = engine.getPartitionA();
+        bestCut = cut;
+        bestBalanced = balanced;
+      }
+    }
+    return best;
+  }
+
+  KLEngine newEngine(CsrGraph graph, long targetWeightA, long tolerance) {
+    KLEngine engine = new KLEngine(graph);
+    engine.setTargetWeightA(targetWeightA);
+    engine.setBalanceTolerance(Math.max(tolerance, maxVertexWeight(graph)));
+    return engine;
+  }
+
+  /**
+   * Grows a region breadth first from the seed vertex until it weighs at
+   * least targetWeight. If the seed's component runs out first, growing
+   * continues from the lowest unvisited vertex.
+   */
+  BitSet growRegion(CsrGraph graph, int seed, long targetWeight) {
+    BitSet region = new BitSet(graph.size());
+    int[] queue = new int[graph.size()];
+    int head = 0;
+    int tail = 0;
+    long weight = 0;
+
+    queue[tail++] = seed;
+    region.set(seed);
+    while (weight < targetWeight) {
+      if (head == tail) {
+        int next = region.nextClearBit(0);
+        if (next >= graph.size()) {
+          break;
+        }
+        queue[tail++] = next;
+        region.set(next);
+      }
+      int u = queue[head++];
+      weight += graph.vertexWeight(u);
+      for (int i = 0; i < graph.degree(u) && weight < targetWeight; i++) {
+        int v = graph.neighbor(u, i);
+        if (!region.get(v)) {
+          region.set(v);
+          queue[tail++] = v;
+        }
+      }
+    }
+
+    // Vertices still queued were never counted, so they stay out of the region
+    for (int i = head; i < tail; i++) {
+      region.clear(queue[i]);
+    }
+    return region;
+  }
+
+  /**
+   * Matches each vertex with its unmatched neighbor of heaviest edge weight,
+   * visiting vertices in random order. Vertices with no unmatched neighbor
+   * stay on their own. Fills coarseOf with the coarse vertex of each vertex
+   * and returns the number of coarse vertices.
+   */
+  int heavyEdgeMatching(CsrGraph graph, int[] coarseOf) {
+    int size = graph.size();
+    int[] order = new int[size];
+    for (int u = 0; u < size; u++) {
+      order[u] = u;
+      coarseOf[u] = -1;
+    }
+    for (int i = size - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int swap = order[i];
+      order[i] = order[j];
+      order[j] = swap;
+    }
+
+    int coarseSize = 0;
+    for (int u : order) {
+      if (coarseOf[u] != -1) {
+        continue;
+      }
+      int match = u;
+      int maxWeight = Integer.MIN_VALUE;
+      for (int i = 0; i < graph.degree(u); i++) {
+        int v = graph.neighbor(u, i);
+        if (coarseOf[v] == -1 && v != u && graph.neighborWeight(u, i) > maxWeight) {
+          match = v;
+          maxWeight = graph.neighborWeight(u, i);
+        }
+      }
+      coarseOf[u] = coarseSize;
+      coarseOf[match] = coarseSize;
+      coarseSize++;
+    }
+    return coarseSize;
+  }
+
+  /**
+   * Builds the coarse graph for a matching. Each coarse vertex weighs the
+   * sum of its fine vertices, and edges between the same pair of coarse
+   * vertices are merged into one edge of their total weight.
+   */
+  CsrGraph contract(CsrGraph graph, int[] coarseOf, int coarseSize) {
+    int[] vertexWeights = new int[coarseSize];
+    for (int u = 0; u < graph.size(); u++) {
+      vertexWeights[coarseOf[u]] += graph.vertexWeight(u);
+    }
+
+    // Each undirected edge is stored in both endpoint rows, so keep u < v only
+    int edgeCount = 0;
+    int[] from = new int[graph.targets.length / 2];
+    int[] to = new int[from.length];
+    int[] weight = new int[from.length];
+    for (int u = 0; u < graph.size(); u++) {
+      for (int i = 0; i < graph.degree(u); i++) {
+        int v = graph.neighbor(u, i);
+        if (u < v && coarseOf[u] != coarseOf[v]) {
+          from[edgeCount] = coarseOf[u];
+          to[edgeCount] = coarseOf[v];
+          weight[edgeCount] = graph.neighborWeight(u, i);
+          edgeCount++;
+        }
+      }
+    }
+
+    CsrGraph coarse = CsrGraph.fromEdges(coarseSize, from, to, weight, edgeCount);
+    coarse.vertexWeights = vertexWeights;
+    return coarse;
+  }
+
+  // returns the total weight of the edges whose endpoints are in different parts
+  public static long cutWeight(Graph graph, int[] parts) {
+    long cut = 0;
+    for (int u = 0; u < graph.size(); u++) {
+      for (int i = 0; i < graph.degree(u); i++) {
+        int v = graph.neighbor(u, i);
+        if (u < v && parts[u] != parts[v]) {
+          cut += graph.neighborWeight(u, i);
+        }
+      }
+    }
+    return cut;
+  }
+
+  static long totalWeight(Graph graph) {
+    long total = 0;
+    for (int u = 0; u < graph.size(); u++) {
+      total += graph.vertexWeight(u);
+    }
+    return total;
+  }
+
+  static int maxVertexWeight(Graph graph) {
+    int max = 0;
+    for (int u = 0; u < graph.size(); u++) {
+      max = Math.max(max, graph.vertexWeight(u));
+    }
+    return max;
+  }
+
+  public void setCoarsestSize(int coarsestSize) {
+    this.coarsestSize = coarsestSize;
+  }
+
+  // Sets how many non-improving moves end an FM refinement pass early
+  public void setStallLimit(int stallLimit) {
+    this.stallLimit = stallLimit;
+  }
+
+  public void setInitialTries(int initialTries) {
+    this.initialTries = initialTries;
+  }
+
+  // Sets the allowed imbalance of each bisection as a fraction of total weight
+  public void setImbalance(double imbalance) {
+    this.imbalance = imbalance;
+  }
+
+  public void setSeed(long seed) {
+    this.random = new Random(seed);
+  }
+}
@@ -0,0 +1,46 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event recorded for every refinement pass of a KLEngine, with the same
+ * data as PassStats. Enable it in a recording to profile partitioning, for
+ * example with -XX:StartFlightRecording and a settings file that turns on
+ * klpartition.Pass.
+ */
+@Name("klpartition.Pass")
+@Label("Partition Refinement Pass")
+@Category("KLPartition")
+@Description("A single Kernighan-Lin or Fiduccia-Mattheyses refinement pass")
+class PassEvent extends jdk.jfr.Event {
+  @Label("Mode")
+  String mode;
+
+  @Label("Pass")
+  int pass;
+
+  @Label("Steps")
+  int steps;
+
+  @Label("Minimum Step Gain")
+  int gainMin;
+
+  @Label("Maximum Step Gain")
+  int gainMax;
+
+  @Label("Kept Steps")
+  int k;
+
+  @Label("Total Gain")
+  int totalGain;
+
+  @Label("Cut Before")
+  long cutBefore;
+
+  @Label("Cut After")
+  long cutAfter;
+
+  @Label("Vertices Locked")
+  int verticesLocked;
+}
@@ -0,0 +1,11 @@
+/**
+ * Receives the statistics of every refinement pass a KLEngine runs. Engines
+ * only gather these statistics while a listener is set (or while the
+ * PassEvent JFR event is enabled), so an engine without one pays nothing.
+ *
+ * Engines driven from several threads, as in MultiStartPartitioner, may
+ * call the same listener concurrently.
+ */
+public interface PassListener {
+  void passCompleted(PassStats stats);
+}
@@ -0,0 +1,28 @@
+/**
+ * The statistics of a single Kernighan-Lin or Fiduccia-Mattheyses pass. A
+ * step is a pair set aside in a KL pass or a vertex moved in an FM pass, and
+ * the gain fields summarize the gains of all the steps in the pass (what
+ * KLPartition called the gainList).
+ */
+public class PassStats {
+  public String mode;
+  public int pass;
+  public int steps;
+  public int gainMin;
+  public int gainMax;
+  public long gainSum;
+  // The number of steps kept, as chosen by numberToMaximizeTotalGain
+  public int k;
+  public int totalGain;
+  public long cutBefore;
+  public long cutAfter;
+  public long elapsedNanos;
+  public int verticesLocked;
+
+  public String toString() {
+    return mode + " pass " + pass + ": cut " + cutBefore + " -> " + cutAfter +
+           ", kept " + k + " of " + steps + " steps (gain " + totalGain +
+           ", step gains " + gainMin + ".." + gainMax + "), " +
+           verticesLocked + " vertices locked, " + (elapsedNanos / 1000) + " us";
+  }
+}